@@ -0,0 +1,750 @@
+import bench.Workload;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// benchmark harness for the controller hot paths, run as
+//     gradle harness -Pargs="[max components] [benchmark name filter]"
+// (or java -cp out GridBenchmark ... with src/ and benchmarks/harness/ compiled together to out)
+// at every scale from 10 to the maximum (1,000,000 by default), following what a JMH run does: a trial setup per
+// scale, warmup iterations, then measured iterations, with the state reset outside of the timing when the
+// benchmark destroys it. For each benchmark and scale it prints the throughput (ops/s and time per op), the bytes
+// allocated per op by all the threads and the garbage collections during the measurement, so that a change to these
+// classes can be compared with the baseline printed before it. The console output of the components is discarded
+// while measuring (but still built, as in production). The same cases run under JMH from benchmarks/jmh. The
+// *Vector cases need the src-vector/ classes and --add-modules jdk.incubator.vector, they are skipped otherwise.
+public class GridBenchmark {
+    private static final int[] SCALES = {10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long MIN_ITERATION_NANOS = 100_000_000; // short ops are repeated until this long
+    private static final long MAX_ITERATION_NANOS = 2_000_000_000; // setup included, for the ones reset at each run
+
+    private static final LocalDate DATE = LocalDate.of(2020, 1, 1);
+    private static final PrintStream CONSOLE = System.out;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final long PROBE_BYTES = probeBytes();
+
+    static volatile double sink; // results land here so the JIT cannot drop the work
+
+    // one benchmark: trial builds the state for a scale, invocation restores it before each iteration and, for the
+    // benchmarks destroying it, before every run (not timed); run does the measured work and returns how many
+    // operations it did
+    abstract static class Case {
+        final String name;
+
+        Case(String name) {
+            this.name = name;
+        }
+
+        abstract void trial(int components);
+
+        void invocation() {
+        }
+
+        abstract long run();
+
+        // true if run destroys the state, so invocation has to restore it before every run
+        boolean resetEachRun() {
+            return false;
+        }
+
+        // why the case cannot run in this JVM, null if it can
+        String unavailable() {
+            return null;
+        }
+    }
+
+    // PowerBatch.apparentPower or efficiency over the whole fleet with the given kernels, checked at each trial
+    // against the generators' own values and against the scalar kernels
+    static Case batchCase(String name, PowerBatch.Kernels kernels, boolean efficiency) {
+        return new Case(name) {
+            Grid grid;
+            PowerBatch batch;
+            double[] out;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, false);
+                batch = new PowerBatch(kernels);
+                out = new double[grid.generators.length];
+                double[] scalar = new double[out.length];
+                compute(batch, out);
+                compute(new PowerBatch(PowerBatch.SCALAR), scalar);
+                for (int i = 0; i < out.length; i++) {
+                    PowerGenerator generator = grid.generators[i];
+                    double expected = efficiency ? generator.calculateEfficiency() : generator.getApparentPower();
+                    if (!(Math.abs(out[i] - expected) <= 1e-12 * Math.abs(expected))
+                            || !(Math.abs(out[i] - scalar[i]) <= 1e-12 * Math.abs(scalar[i]))) {
+                        throw new IllegalStateException(name + " differs at " + i + ": " + out[i] + ", scalar "
+                                + scalar[i] + ", generator " + expected);
+                    }
+                }
+            }
+
+            private void compute(PowerBatch with, double[] into) {
+                if (efficiency) {
+                    with.efficiency(grid.generators, grid.generators.length, into);
+                }
+                else {
+                    with.apparentPower(grid.generators, grid.generators.length, into);
+                }
+            }
+
+            @Override
+            long run() {
+                compute(batch, out);
+                sink += out[out.length - 1];
+                return out.length;
+            }
+
+            @Override
+            String unavailable() {
+                return kernels == null ? "needs src-vector/ and --add-modules jdk.incubator.vector" : null;
+            }
+        };
+    }
+
+    // a grid of chains generator -> generator breaker, transformer -> breaker, four components per chain
+    static final class Grid {
+        final PowerGridController controller;
+        final PowerGenerator[] generators;
+        final Transformer[] transformers;
+        final CircuitBreaker[] breakers;
+        final CircuitBreaker[] generatorBreakers;
+        final String[] ids;
+        final ElectricalComponent[] components;
+
+        Grid(int components, boolean register) {
+            int chains = Math.max(1, components / 4);
+            CircuitBreaker reference = new CircuitBreaker("CB-REF", ComponentType.CIRCUIT_BREAKER,
+                    PowerComponentStatus.OPERATIONAL, DATE, DATE, null);
+            controller = new PowerGridController(null, null, reference);
+            generators = new PowerGenerator[chains];
+            transformers = new Transformer[chains];
+            breakers = new CircuitBreaker[chains];
+            generatorBreakers = new CircuitBreaker[chains];
+            ids = new String[chains * 4];
+            this.components = new ElectricalComponent[chains * 4];
+            for (int i = 0; i < chains; i++) {
+                generatorBreakers[i] = new CircuitBreaker("GCB" + i, ComponentType.CIRCUIT_BREAKER,
+                        PowerComponentStatus.OPERATIONAL, DATE, DATE, null);
+                generators[i] = new PowerGenerator("G" + i, ComponentType.GENERATOR, PowerComponentStatus.OPERATIONAL,
+                        DATE, DATE, controller, generatorBreakers[i]);
+                transformers[i] = new Transformer(generators[i], "T" + i, ComponentType.TRANSFORMER,
+                        PowerComponentStatus.OPERATIONAL, DATE, DATE, controller);
+                breakers[i] = new CircuitBreaker("CB" + i, ComponentType.CIRCUIT_BREAKER,
+                        PowerComponentStatus.OPERATIONAL, DATE, DATE, transformers[i]);
+                add(4 * i, "G" + i, generators[i]);
+                add(4 * i + 1, "GCB" + i, generatorBreakers[i]);
+                add(4 * i + 2, "T" + i, transformers[i]);
+                add(4 * i + 3, "CB" + i, breakers[i]);
+            }
+            if (register) {
+                registerAll(controller);
+            }
+        }
+
+        private void add(int at, String id, ElectricalComponent ec) {
+            ids[at] = id;
+            components[at] = ec;
+        }
+
+        void registerAll(PowerGridController target) {
+            for (int i = 0; i < components.length; i++) {
+                target.registerComponent(ids[i], components[i]);
+            }
+        }
+
+        // everything back in service, breakers closed
+        void restore() {
+            for (ElectricalComponent ec : components) {
+                ec.setStatus(PowerComponentStatus.OPERATIONAL);
+                if (ec instanceof CircuitBreaker) {
+                    ((CircuitBreaker) ec).restoreContact(false);
+                }
+            }
+        }
+    }
+
+    static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+        cases.add(new Case("registerComponent") {
+            Grid grid;
+            PowerGridController target;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, false);
+            }
+
+            @Override
+            void invocation() {
+                target = new PowerGridController(null, null, null);
+            }
+
+            @Override
+            long run() {
+                grid.registerAll(target);
+                return grid.components.length;
+            }
+
+            @Override
+            boolean resetEachRun() {
+                return true;
+            }
+        });
+        cases.add(new Case("monitorGridStatus") {
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            long run() {
+                grid.controller.monitorGridStatus();
+                return 1;
+            }
+        });
+        cases.add(new Case("validateGridIntegrity") {
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            long run() {
+                boolean intact = true;
+                for (int i = 0; i < 1000; i++) {
+                    intact &= grid.controller.validateGridIntegrity();
+                }
+                sink += intact ? 1 : 0;
+                return 1000;
+            }
+        });
+        cases.add(new Case("auditGridIntegrity") {
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            long run() {
+                sink += grid.controller.auditGridIntegrity() ? 1 : 0;
+                return 1;
+            }
+        });
+        cases.add(new Case("processMantainanceQue") {
+            Grid grid;
+            int taskCount;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            void invocation() {
+                grid.restore();
+                MaintenanceTaskHeap queue = grid.controller.getMaintainanceQue();
+                TaskType[] types = TaskType.values();
+                taskCount = grid.components.length;
+                for (int i = 0; i < taskCount; i++) {
+                    queue.offer(new MantainanceTask("MT" + i, grid.ids[i], types[i % types.length], grid.controller));
+                }
+            }
+
+            @Override
+            long run() {
+                grid.controller.processMantainanceQue();
+                return taskCount;
+            }
+
+            @Override
+            boolean resetEachRun() {
+                return true;
+            }
+        });
+        cases.add(new Case("handleEmergencyShutDown") {
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            void invocation() {
+                grid.restore();
+            }
+
+            @Override
+            long run() {
+                grid.controller.handleEmergencyShutDown();
+                return 1;
+            }
+
+            @Override
+            boolean resetEachRun() {
+                return true;
+            }
+        });
+        cases.add(new Case("breakerBankOpenAll") { // the breaker phase of the emergency shutdown
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            long run() {
+                BreakerBank bank = grid.controller.getBreakerBank();
+                sink += bank.openAll();
+                sink += bank.closeAll();
+                return 2;
+            }
+        });
+        cases.add(new Case("efficiencyChain") { // CircuitBreaker -> Transformer.Pout -> Pin -> generator
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            long run() {
+                double total = 0;
+                for (int i = 0; i < grid.breakers.length; i++) {
+                    total += grid.breakers[i].calculateEfficiency();
+                    total += grid.transformers[i].Pin();
+                    total += grid.generators[i].calculateEfficiency();
+                }
+                sink += total;
+                return grid.breakers.length;
+            }
+        });
+        cases.add(new Case("fleetEfficiencyReport") { // running totals, what a dashboard refresh costs
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            long run() {
+                sink += grid.controller.getFleetEfficiency().getTotalLosses();
+                return 1;
+            }
+        });
+        cases.add(new Case("fleetEfficiencyCompute") { // the same figures by the parallel reduction
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            long run() {
+                sink += grid.controller.computeFleetEfficiency().getTotalLosses();
+                return 1;
+            }
+        });
+        cases.add(new Case("generatorScanHeap") { // total power and excitation check, object by object
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+            }
+
+            @Override
+            long run() {
+                double total = 0;
+                int weak = 0;
+                for (PowerGenerator generator : grid.generators) {
+                    total += generator.getApparentPower();
+                    if (generator.getExcitationField() < 10) {
+                        weak++;
+                    }
+                }
+                sink += total + weak;
+                return grid.generators.length;
+            }
+        });
+        cases.add(new Case("generatorScanColumns") { // the same on the ParameterStore columns
+            Grid grid;
+            final int[] rows = new int[64];
+            ParameterStore store;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, true);
+                store = grid.controller.enableParameterStore();
+            }
+
+            @Override
+            long run() {
+                sink += store.totalApparentPower() + store.generatorsBelowExcitation(10, rows);
+                return grid.generators.length;
+            }
+        });
+        cases.add(new Case("loadRephaseScalar") { // generator by generator (not registered: no listeners)
+            Grid grid;
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, false);
+            }
+
+            @Override
+            long run() {
+                for (PowerGenerator generator : grid.generators) {
+                    generator.loadRephase(0);
+                }
+                return grid.generators.length;
+            }
+        });
+        cases.add(new Case("loadRephaseBatch") { // the same with PowerBatch, checked against the scalar path
+            Grid grid;
+            final PowerBatch batch = new PowerBatch();
+
+            @Override
+            void trial(int components) {
+                grid = new Grid(components, false);
+                PowerGenerator[] generators = grid.generators;
+                double[] active = new double[generators.length];
+                double[] reactive = new double[generators.length];
+                for (int i = 0; i < generators.length; i++) {
+                    generators[i].loadRephase(0);
+                    active[i] = generators[i].activePower;
+                    reactive[i] = generators[i].reactivePower;
+                }
+                batch.loadRephase(generators, generators.length);
+                for (int i = 0; i < generators.length; i++) {
+                    if (Math.abs(generators[i].activePower - active[i]) > 1e-9 * Math.abs(active[i])
+                            || Math.abs(generators[i].reactivePower - reactive[i]) > 1e-9 * Math.abs(reactive[i])) {
+                        throw new IllegalStateException("batch rephase differs at " + i);
+                    }
+                }
+            }
+
+            @Override
+            long run() {
+                batch.loadRephase(grid.generators, grid.generators.length);
+                return grid.generators.length;
+            }
+        });
+        cases.add(batchCase("apparentPowerScalar", PowerBatch.SCALAR, false));
+        cases.add(batchCase("apparentPowerVector", PowerBatch.vectorKernels(), false));
+        cases.add(batchCase("efficiencyScalar", PowerBatch.SCALAR, true));
+        cases.add(batchCase("efficiencyVector", PowerBatch.vectorKernels(), true));
+        cases.add(new Case("telemetryAppend") { // one series of per-second readings into a fresh store
+            TimeSeriesStore store;
+            double[] values;
+
+            @Override
+            void trial(int components) {
+                checkTelemetryRoundTrip();
+                values = new double[components];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = 10_000 + Math.round(Math.sin(i / 50.0) * 400) / 4.0;
+                }
+            }
+
+            @Override
+            void invocation() {
+                store = new TimeSeriesStore();
+                store.append("WARM", TelemetryQuantity.VOLTAGE, 0, 0); // the first slab is allocated here
+            }
+
+            @Override
+            long run() {
+                TimeSeriesStore.Series series = store.series("G0", TelemetryQuantity.VOLTAGE);
+                for (int i = 0; i < values.length; i++) {
+                    series.append(TELEMETRY_START + 1000L * i, values[i]);
+                }
+                return values.length;
+            }
+
+            @Override
+            boolean resetEachRun() {
+                return true;
+            }
+        });
+        cases.add(new Case("telemetryQuery") { // the whole series decoded
+            TimeSeriesStore store;
+            int points;
+
+            @Override
+            void trial(int components) {
+                checkTelemetryRoundTrip();
+                store = new TimeSeriesStore();
+                points = components;
+                for (int i = 0; i < points; i++) {
+                    store.append("G0", TelemetryQuantity.VOLTAGE, TELEMETRY_START + 1000L * i,
+                            10_000 + Math.round(Math.sin(i / 50.0) * 400) / 4.0);
+                }
+            }
+
+            @Override
+            long run() {
+                return store.query("G0", TelemetryQuantity.VOLTAGE, Long.MIN_VALUE, Long.MAX_VALUE,
+                        (timestamp, value) -> sink += value);
+            }
+        });
+        return cases;
+    }
+
+    private static final long TELEMETRY_START = 1_700_000_000_000L;
+
+    // the Gorilla codec of TimeSeriesStore read back against what was written, bit for bit: delta of deltas on both
+    // sides of every bucket boundary, NaN, signed zeros, infinities, repeated values and values leaving the XOR
+    // window, enough points for many chunks, a range query across chunk boundaries and one over expired chunks
+    static void checkTelemetryRoundTrip() {
+        int[] bucketEdges = {0, 1, -1, -63, 64, -64, 65, -255, 256, -256, 257, -2047, 2048, -2048, 2049,
+                1_000_000, -1_000_000};
+        double[] specials = {Double.NaN, 0.0, -0.0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE, 230.5, 230.5, 230.25, 1e-300, -7.125};
+        int count = 20_000;
+        long[] timestamps = new long[count];
+        double[] values = new double[count];
+        long timestamp = TELEMETRY_START;
+        long delta = 5_000_000;
+        for (int i = 0; i < count; i++) {
+            int edge = bucketEdges[(i / 2) % bucketEdges.length];
+            delta += (i & 1) == 0 ? edge : -edge; // the edge, then back: both signs of every boundary
+            timestamp += delta;
+            timestamps[i] = timestamp;
+            values[i] = i % 3 == 0 ? specials[(i / 3) % specials.length] : Math.sin(i) * 1e6;
+        }
+
+        TimeSeriesStore store = new TimeSeriesStore();
+        TimeSeriesStore.Series series = store.series("CHECK", TelemetryQuantity.VOLTAGE);
+        for (int i = 0; i < count; i++) {
+            if (!series.append(timestamps[i], values[i])) {
+                throw new IllegalStateException("telemetry point " + i + " refused");
+            }
+        }
+        if (series.getChunks() < 10) {
+            throw new IllegalStateException("telemetry check spans only " + series.getChunks() + " chunks");
+        }
+        checkTelemetryRange(series, timestamps, values, 0, count, Long.MIN_VALUE, Long.MAX_VALUE);
+        // a few thousand points from the middle of one chunk to the middle of another
+        checkTelemetryRange(series, timestamps, values, 3_001, 7_777, timestamps[3_001], timestamps[7_777]);
+
+        // retention: the chunks entirely older than the limit go, the query over the whole range returns what is
+        // left (a suffix of the points, starting at a chunk boundary), and expiring everything empties the series
+        store.setRetention(timestamps[count - 1] - timestamps[count / 2]);
+        int freed = store.applyRetention(timestamps[count - 1]);
+        int kept = 0;
+        while (kept < count && timestamps[count - 1 - kept] >= series.getFirstTimestamp()) {
+            kept++;
+        }
+        if (freed == 0 || kept >= count || timestamps[count - kept] > timestamps[count / 2]) {
+            throw new IllegalStateException("telemetry retention freed " + freed + " blocks, kept " + kept);
+        }
+        checkTelemetryRange(series, timestamps, values, count - kept, count, timestamps[0], Long.MAX_VALUE);
+        store.applyRetention(timestamps[count - 1] + store.getRetention() + 1);
+        if (series.query(Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> { }) != 0 || series.getChunks() != 0) {
+            throw new IllegalStateException("telemetry series not emptied by retention");
+        }
+    }
+
+    // points [first, end) expected from the query [from, to)
+    private static void checkTelemetryRange(TimeSeriesStore.Series series, long[] timestamps, double[] values,
+                                            int first, int end, long from, long to) {
+        int[] next = {first};
+        int found = series.query(from, to, (timestamp, value) -> {
+            int i = next[0]++;
+            if (i >= end || timestamp != timestamps[i]
+                    || Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(values[i])) {
+                throw new IllegalStateException("telemetry point " + i + " read back as " + timestamp + " "
+                        + value + (i < end ? ", written " + timestamps[i] + " " + values[i] : ""));
+            }
+        });
+        if (found != end - first) {
+            throw new IllegalStateException("telemetry query returned " + found + " points, expected "
+                    + (end - first));
+        }
+    }
+
+    public static void main(String[] args) {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : SCALES[SCALES.length - 1];
+        String filter = args.length > 1 ? args[1] : "";
+        discardEventLog();
+        CONSOLE.printf(Locale.ROOT, "%-26s %10s %14s %14s %14s %8s %9s%n",
+                "benchmark", "components", "ops/s", "ns/op", "B/op", "gc", "gc ms");
+        for (Case c : cases()) {
+            if (!c.name.contains(filter)) {
+                continue;
+            }
+            if (c.unavailable() != null) {
+                CONSOLE.printf(Locale.ROOT, "%-26s skipped, %s%n", c.name, c.unavailable());
+                continue;
+            }
+            for (int scale : SCALES) {
+                if (scale > max) {
+                    break;
+                }
+                measure(c, scale);
+            }
+        }
+    }
+
+    // the case of that name for the JMH benchmarks, which cannot name Case
+    public static Workload workload(String name) {
+        for (Case c : cases()) {
+            if (c.name.equals(name)) {
+                if (c.unavailable() != null) {
+                    throw new IllegalStateException(name + " " + c.unavailable());
+                }
+                discardEventLog();
+                return new Workload() {
+                    @Override
+                    public void trial(int components) {
+                        c.trial(components);
+                    }
+
+                    @Override
+                    public void invocation() {
+                        c.invocation();
+                    }
+
+                    @Override
+                    public long run() {
+                        return c.run();
+                    }
+
+                    @Override
+                    public boolean resetEachRun() {
+                        return c.resetEachRun();
+                    }
+                };
+            }
+        }
+        throw new IllegalArgumentException("no benchmark named " + name);
+    }
+
+    // the lines are still formatted by the writer thread, as in production, but go nowhere
+    private static void discardEventLog() {
+        try {
+            GridEventLog.install(new GridEventLog(1 << 16, lines -> { })).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void measure(Case c, int scale) {
+        System.setOut(DISCARD);
+        double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        long gcCount = 0;
+        long gcMillis = 0;
+        try {
+            c.trial(scale);
+            for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+                long iterationOps = 0;
+                long iterationNanos = 0;
+                long iterationBytes = 0;
+                long gcCountBefore = gcCount();
+                long gcMillisBefore = gcMillis();
+                long iterationStart = System.nanoTime();
+                c.invocation();
+                // the probe allocates too: once per iteration, unless the setup between runs has to be left out
+                long iterationBytesBefore = allocatedBytes();
+                do {
+                    if (c.resetEachRun() && iterationOps > 0) {
+                        c.invocation();
+                    }
+                    long bytesBefore = c.resetEachRun() ? allocatedBytes() : 0;
+                    long start = System.nanoTime();
+                    iterationOps += c.run();
+                    iterationNanos += System.nanoTime() - start;
+                    if (c.resetEachRun()) {
+                        iterationBytes += allocatedBytes() - bytesBefore - PROBE_BYTES;
+                    }
+                } while (iterationNanos < MIN_ITERATION_NANOS
+                        && System.nanoTime() - iterationStart < MAX_ITERATION_NANOS);
+                if (!c.resetEachRun()) {
+                    iterationBytes = allocatedBytes() - iterationBytesBefore - PROBE_BYTES;
+                }
+                if (i >= WARMUP_ITERATIONS) {
+                    nanosPerOp[i - WARMUP_ITERATIONS] = (double) iterationNanos / iterationOps;
+                    ops += iterationOps;
+                    nanos += iterationNanos;
+                    bytes += iterationBytes;
+                    gcCount += gcCount() - gcCountBefore;
+                    gcMillis += gcMillis() - gcMillisBefore;
+                }
+            }
+        } finally {
+            System.setOut(CONSOLE);
+        }
+        double mean = (double) nanos / ops;
+        double spread = 0;
+        for (double value : nanosPerOp) {
+            spread = Math.max(spread, Math.abs(value - mean));
+        }
+        CONSOLE.printf(Locale.ROOT, "%-26s %10d %14.1f %14.1f %14.1f %8d %9d   (ns/op +- %.1f)%n",
+                c.name, scale, ops * 1e9 / nanos, mean, (double) bytes / ops, gcCount, gcMillis, spread);
+    }
+
+    // bytes allocated so far by all live threads (the fork/join workers of the parallel monitor included)
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    // what allocatedBytes allocates itself, taken off every measurement
+    private static long probeBytes() {
+        long smallest = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = allocatedBytes();
+            smallest = Math.min(smallest, allocatedBytes() - before);
+        }
+        return smallest;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,16 @@
+package bench;
+
+// one GridBenchmark case as seen from the JMH benchmarks: JMH refuses classes of the default package and code in a
+// package cannot name them, so the cases are handed over through this interface (GridBenchmark.workload)
+public interface Workload {
+    // builds the state for a scale
+    void trial(int components);
+
+    // restores the state, before each iteration or, if resetEachRun, before every run
+    void invocation();
+
+    // the measured work, returns how many operations it did
+    long run();
+
+    boolean resetEachRun();
+}
@@ -0,0 +1,54 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// the GridBenchmark cases that leave the grid as they found it, the state is restored once per iteration. The time
+// is per run of the case (a run of validateGridIntegrity is 1000 validations, a scan or an efficiency chain goes over
+// every generator), allocation and GC figures come from -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridHotPaths {
+    @Param({"monitorGridStatus", "validateGridIntegrity", "auditGridIntegrity", "breakerBankOpenAll", "efficiencyChain",
+            "fleetEfficiencyReport", "fleetEfficiencyCompute", "generatorScanHeap", "generatorScanColumns",
+            "loadRephaseScalar", "loadRephaseBatch", "apparentPowerScalar", "apparentPowerVector", "efficiencyScalar",
+            "efficiencyVector", "telemetryQuery"})
+    public String benchmark;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int components;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void trial() throws ReflectiveOperationException {
+        workload = Workloads.named(benchmark, false);
+        workload.trial(components);
+    }
+
+    @Setup(Level.Iteration)
+    public void iteration() {
+        workload.invocation();
+    }
+
+    @Benchmark
+    public long run() {
+        return workload.run();
+    }
+}
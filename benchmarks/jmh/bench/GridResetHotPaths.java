@@ -0,0 +1,51 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// the GridBenchmark cases that consume their state (registrations, a queue drained, breakers opened), restored
+// before every call outside of the timing. A call takes milliseconds at these scales, so the per invocation setup
+// does not distort it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridResetHotPaths {
+    @Param({"registerComponent", "processMantainanceQue", "handleEmergencyShutDown", "telemetryAppend"})
+    public String benchmark;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int components;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void trial() throws ReflectiveOperationException {
+        workload = Workloads.named(benchmark, true);
+        workload.trial(components);
+    }
+
+    @Setup(Level.Invocation)
+    public void invocation() {
+        workload.invocation();
+    }
+
+    @Benchmark
+    public long run() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,17 @@
+package bench;
+
+final class Workloads {
+    private Workloads() {
+    }
+
+    // GridBenchmark is in the default package, only reachable by name
+    static Workload named(String name, boolean resetEachRun) throws ReflectiveOperationException {
+        Workload workload = (Workload) Class.forName("GridBenchmark").getMethod("workload", String.class)
+                .invoke(null, name);
+        if (workload.resetEachRun() != resetEachRun) {
+            throw new IllegalArgumentException(name + (resetEachRun ? " does not consume" : " consumes")
+                    + " its state, it belongs to the other benchmark class");
+        }
+        return workload;
+    }
+}
@@ -0,0 +1,60 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// PowerBatch kernels on the Vector API (jdk.incubator.vector, compiled and run with --add-modules
+// jdk.incubator.vector), loaded by PowerBatch only when that module is there. Full vectors of the preferred width,
+// then the remaining elements one by one like PowerBatch.SCALAR. Multiplications and additions are separate (no
+// fma), so every lane rounds exactly as the scalar loop and the results are the same bit for bit.
+public final class VectorKernels implements PowerBatch.Kernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // as many int lanes as double lanes, for the voltage * current products
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    @Override
+    public void apparentPower(double[] active, double[] reactive, double[] out, int n) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(n); i < bound; i += DOUBLES.length()) {
+            DoubleVector p = DoubleVector.fromArray(DOUBLES, active, i);
+            DoubleVector q = DoubleVector.fromArray(DOUBLES, reactive, i);
+            p.mul(p).add(q.mul(q)).sqrt().intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            double p = active[i];
+            double q = reactive[i];
+            out[i] = Math.sqrt(p * p + q * q);
+        }
+    }
+
+    @Override
+    public void divide(double[] numerator, double[] denominator, double[] out, int n) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(n); i < bound; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, numerator, i).div(DoubleVector.fromArray(DOUBLES, denominator, i))
+                    .intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = numerator[i] / denominator[i];
+        }
+    }
+
+    @Override
+    public void rephase(int[] voltage, int[] current, double[] factor, double[] sine, double[] active,
+                        double[] reactive, int n) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(n); i < bound; i += DOUBLES.length()) {
+            IntVector product = IntVector.fromArray(INTS, voltage, i).mul(IntVector.fromArray(INTS, current, i));
+            DoubleVector vi = (DoubleVector) product.convertShape(VectorOperators.I2D, DOUBLES, 0);
+            vi.mul(DoubleVector.fromArray(DOUBLES, factor, i)).mul(3).intoArray(active, i);
+            vi.mul(DoubleVector.fromArray(DOUBLES, sine, i)).mul(3).intoArray(reactive, i);
+        }
+        for (; i < n; i++) {
+            int vi = voltage[i] * current[i];
+            active[i] = 3 * (vi * factor[i]);
+            reactive[i] = 3 * (vi * sine[i]);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// contact positions of all the registered breakers, one bit per breaker (1 = open). A breaker receives a slot when
+// registered and from then on its checkCircuitStatus/openCircuit/closeCircuit read and write its bit here; the
+// contactWear string only serves the breakers outside of a controller. Whole sections (a slot range or a mask built
+// from a set of breakers) are switched 64 breakers at a time, and a bulk operation is published to the listeners once,
+// with the mask of the breakers that really moved, instead of one event and one console line per breaker.
+public class BreakerBank implements ComponentListener {
+    private static final int INITIAL_WORDS = 16;
+
+    private final ComponentListener publisher; // usually the registry, which fans out to its own listeners
+    private volatile AtomicLongArray words = new AtomicLongArray(INITIAL_WORDS); // written under the bank lock only
+    private long[] present = new long[INITIAL_WORDS]; // slots holding a breaker
+    private CircuitBreaker[] breakers = new CircuitBreaker[INITIAL_WORDS * 64];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount; // slots ever used, free ones included
+    private int size;
+
+    public BreakerBank(ComponentListener publisher) {
+        this.publisher = publisher;
+    }
+
+    // a fixed set of slots switched together, e.g. the breakers of a substation or the ones fed by a generator
+    public static final class Section {
+        private final long[] mask;
+        private final int count;
+
+        private Section(long[] mask, int count) {
+            this.mask = mask;
+            this.count = count;
+        }
+
+        public int size() {
+            return count;
+        }
+    }
+
+    // registry side: slots follow registration, a removed breaker gets its own contacts back
+
+    @Override
+    public synchronized void componentRegistered(String componentID, ElectricalComponent ec) {
+        if (!(ec instanceof CircuitBreaker)) {
+            return;
+        }
+        CircuitBreaker cb = (CircuitBreaker) ec;
+        int slot = takeSlot(cb.restoredSlot);
+        cb.restoredSlot = -1;
+        ensureCapacity(slotCount);
+        breakers[slot] = cb;
+        present[slot >>> 6] |= 1L << slot;
+        setBit(slot, cb.checkCircuitStatus());
+        size++;
+        cb.attachBank(this, slot);
+    }
+
+    @Override
+    public synchronized void componentRemoved(String componentID, ElectricalComponent ec) {
+        if (!(ec instanceof CircuitBreaker) || ((CircuitBreaker) ec).bank() != this) {
+            return;
+        }
+        CircuitBreaker cb = (CircuitBreaker) ec;
+        int slot = cb.bankSlot();
+        cb.detachBank(isOpen(slot));
+        breakers[slot] = null;
+        present[slot >>> 6] &= ~(1L << slot);
+        setBit(slot, false);
+        addFreeSlot(slot);
+        size--;
+    }
+
+    // wanted (from a snapshot) if it is free, otherwise a free slot or a new one
+    private int takeSlot(int wanted) {
+        if (wanted >= slotCount) {
+            for (int s = slotCount; s < wanted; s++) {
+                addFreeSlot(s);
+            }
+            slotCount = wanted + 1;
+            return wanted;
+        }
+        if (wanted >= 0 && breakers[wanted] == null) {
+            for (int i = 0; i < freeCount; i++) {
+                if (freeSlots[i] == wanted) {
+                    freeSlots[i] = freeSlots[--freeCount];
+                    return wanted;
+                }
+            }
+        }
+        return freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+    }
+
+    private void addFreeSlot(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void ensureCapacity(int slots) {
+        AtomicLongArray current = words;
+        if (slots <= current.length() * 64) {
+            return;
+        }
+        int length = current.length();
+        while (length * 64 < slots) {
+            length *= 2;
+        }
+        AtomicLongArray grown = new AtomicLongArray(length);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        breakers = Arrays.copyOf(breakers, length * 64);
+        present = Arrays.copyOf(present, length);
+        words = grown;
+    }
+
+    // single breaker, used by CircuitBreaker itself; returns the previous position
+
+    boolean isOpen(int slot) {
+        return (words.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    // the bit and its breakerSwitched event (only if it moved) under the bank lock, ordered with the bulk switches
+    synchronized boolean switchOne(int slot, boolean open) {
+        boolean wasOpen = setBit(slot, open);
+        if (wasOpen != open && publisher != null) {
+            publisher.breakerSwitched(breakers[slot], open);
+        }
+        return wasOpen;
+    }
+
+    synchronized boolean setBit(int slot, boolean open) {
+        AtomicLongArray current = words;
+        long bit = 1L << slot;
+        long previous = current.get(slot >>> 6);
+        current.setRelease(slot >>> 6, open ? previous | bit : previous & ~bit);
+        return (previous & bit) != 0;
+    }
+
+    // bulk operations, each returns how many breakers changed position
+
+    public int openAll() {
+        return switchRange(0, Integer.MAX_VALUE, true);
+    }
+
+    public int closeAll() {
+        return switchRange(0, Integer.MAX_VALUE, false);
+    }
+
+    // slots [from, to)
+    public synchronized int switchRange(int from, int to, boolean open) {
+        to = Math.min(to, slotCount);
+        if (from >= to) {
+            return 0;
+        }
+        long[] changed = new long[(slotCount + 63) >>> 6];
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        for (int w = first; w <= last; w++) {
+            long mask = -1L;
+            if (w == first) {
+                mask &= -1L << from;
+            }
+            if (w == last) {
+                mask &= -1L >>> (63 - ((to - 1) & 63));
+            }
+            changed[w] = applyWord(w, mask & present[w], open);
+        }
+        return publish(changed, open);
+    }
+
+    public synchronized int switchSection(Section section, boolean open) {
+        long[] changed = new long[(slotCount + 63) >>> 6];
+        int limit = Math.min(changed.length, section.mask.length);
+        for (int w = 0; w < limit; w++) {
+            if (section.mask[w] != 0) {
+                changed[w] = applyWord(w, section.mask[w] & present[w], open);
+            }
+        }
+        return publish(changed, open);
+    }
+
+    // breakers outside of this bank are ignored; slots are stable while the breakers stay registered
+    public synchronized Section section(Collection<CircuitBreaker> members) {
+        long[] mask = new long[(slotCount + 63) >>> 6];
+        int count = 0;
+        for (CircuitBreaker cb : members) {
+            if (cb.bank() == this) {
+                int slot = cb.bankSlot();
+                if ((mask[slot >>> 6] & (1L << slot)) == 0) {
+                    mask[slot >>> 6] |= 1L << slot;
+                    count++;
+                }
+            }
+        }
+        return new Section(mask, count);
+    }
+
+    // under the bank lock; returns the bits that moved
+    private long applyWord(int w, long mask, boolean open) {
+        if (mask == 0) {
+            return 0;
+        }
+        AtomicLongArray current = words;
+        long previous = current.get(w);
+        long next = open ? previous | mask : previous & ~mask;
+        if (next != previous) {
+            current.setRelease(w, next);
+        }
+        return previous ^ next;
+    }
+
+    // under the bank lock, like switchOne: the journal (which only buffers) gets the switches in the order they were
+    // applied, so replaying it ends on the same contact positions
+    private int publish(long[] changed, boolean open) {
+        int count = 0;
+        for (long word : changed) {
+            count += Long.bitCount(word);
+        }
+        if (count > 0) {
+            if (open) {
+                GridMetrics.shared().add(GridMetrics.Counter.BREAKER_OPENINGS, count);
+            }
+            GridEventLog.shared().bankSwitched(count, open);
+            if (publisher != null) {
+                publisher.breakersSwitched(this, changed, open);
+            }
+        }
+        return count;
+    }
+
+    public synchronized CircuitBreaker breaker(int slot) {
+        return slot < slotCount ? breakers[slot] : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int openCount() {
+        AtomicLongArray current = words;
+        int count = 0;
+        for (int i = 0; i < current.length(); i++) {
+            count += Long.bitCount(current.get(i));
+        }
+        return count;
+    }
+}
@@ -1,7 +1,9 @@
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 
 
@@ -10,8 +12,11 @@ public class CircuitBreaker extends ElectricalComponent {
     private double breakingCapacity = 18000;
 
     public String contactWear = "contact on";  // is public because must be accessed from other components in order
-    // to disconnect the load and prevent damages.
-    private List<LocalDate> mantainanceHist = new ArrayList<>();
+    // to disconnect the load and prevent damages. Once registered the position is kept by the controller BreakerBank,
+    // read it through checkCircuitStatus
+    private volatile BreakerBank bank;
+    private int bankSlot = -1;
+    int restoredSlot = -1; // slot saved in a GridSnapshot, taken again at registration so the journal masks still match
     private double contactResistance = 20000;
     public Transformer transformer;
 
@@ -26,49 +31,65 @@ public class CircuitBreaker extends ElectricalComponent {
     public void openCircuit(){ // if there is a shortcircuit somewhere on the electricity provider or on grid,
         // or even power demand is to high the amount of current will jump hugely causing overload on generator,
         // this component will isolate the machine to prevent damages
-
-        this.contactWear = "contact off";
+        long start = System.nanoTime();
+        setContact(true);
 
         // gives feedback about circuit status to be 100% sure it's open
         if (checkCircuitStatus()){
-            System.out.println("contact status : " + contactWear);
+            GridEventLog.shared().breakerOpened(this);
         }
-
+        GridMetrics metrics = GridMetrics.shared();
+        metrics.increment(GridMetrics.Counter.BREAKER_OPENINGS);
+        metrics.recordSince(GridMetrics.Timer.BREAKER_OPEN, start);
     }
 
     public void closeCircuit(double current){
-        if (contactWear.equals("contact off") && current < breakingCapacity){
-            contactWear = "contact on";
-            System.out.println("circuit closed");
+        if (current < breakingCapacity && setContact(false)){ // was open, and the check and the move are one step
+            GridEventLog.shared().breakerClosed(this);
         }
         else {
-            System.out.println("contact not closed. Current to much high");
+            GridEventLog.shared().closeRefused(this, current);
         }
 
     }
 
     public void testTripMech(double current){// new thing learned:
-        // how to delay an operation
-        if (current >= breakingCapacity){
-            CountDownLatch latch = new CountDownLatch(1);
-            delayedOpContaineer delayedOp = new delayedOpContaineer(current, this, latch);
-            Thread delayThread = new Thread(delayedOp);
-            delayThread.start();
-
-            try {
-                latch.await(); // Wait for completion
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+        // how to delay an operation. The caller still waits for the contacts to be open, but the wait is on a shared
+        // timer and not on a new thread for every trip
+        try {
+            GridClock.current().await(tripAsync(current)); // Wait for completion (in a simulation: run up to it)
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            GridEventLog.shared().tripFailed(this, e);
         }
         if (checkCircuitStatus()){
-            System.out.println("contact status : " + contactWear);
+            GridEventLog.shared().trip(this, current);
         }
     }
 
+    // non blocking version for fault storms: the future completes when the breaker is open
+    public CompletableFuture<CircuitBreaker> tripAsync(double current){
+        if (current >= breakingCapacity){
+            return TripScheduler.shared().scheduleTrip(this, current, TripScheduler.TRIP_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        return CompletableFuture.completedFuture(this);
+    }
+
+    public double getBreakingCapacity(){
+        return breakingCapacity;
+    }
+
+    public boolean cancelTrip(){
+        return TripScheduler.shared().cancelTrip(this);
+    }
+
 
     @Override
     protected boolean operatingParametersValidation() {
+        if (transformer == null){ // not wired yet, cannot protect anything
+            return false;
+        }
         if (transformer.getSecondaryVoltage() * transformer.getSecondaryCurrent() < transformer.Pin()){  // if current and voltage exceeds
             // the maximal values the component, no matter what is, will be isolated from the rest of the grid.
            return true;
@@ -79,7 +100,7 @@ public class CircuitBreaker extends ElectricalComponent {
     @Override
     public void performMantainance(TaskType taskType) {
         TaskStatus taskStatus = TaskStatus.IN_PROGRESS;
-        this.status = PowerComponentStatus.OFFLINE;
+        setStatus(PowerComponentStatus.OFFLINE);
     }
 
     @Override
@@ -91,20 +112,88 @@ public class CircuitBreaker extends ElectricalComponent {
         return eff;
     }
 
-    @Override
-    public void addDateToMantainanceHist(LocalDate lastMaintenanceDate) {
-        mantainanceHist.add(lastMaintenanceDate);
-    }
-
     public boolean checkCircuitStatus(){
+        BreakerBank bank = this.bank;
+        if (bank != null){
+            return bank.isOpen(bankSlot);
+        }
         if (contactWear.equals("contact off")){
             return true;
         }
         return false;
     }
 
+    public String contactStatus(){
+        return checkCircuitStatus() ? "contact off" : "contact on";
+    }
+
+    // returns the previous position (true = was open)
+    // moves the contacts and, if they moved, tells the listener; returns the previous position (true = open). In a
+    // bank the event is published under the bank lock, so it cannot overtake or be overtaken by a bulk switch
+    private boolean setContact(boolean open){
+        return setContact(open, true);
+    }
+
+    private boolean setContact(boolean open, boolean publish){
+        BreakerBank bank = this.bank;
+        if (bank != null){
+            return publish ? bank.switchOne(bankSlot, open) : bank.setBit(bankSlot, open);
+        }
+        boolean wasOpen;
+        synchronized (this){
+            wasOpen = contactWear.equals("contact off");
+            contactWear = open ? "contact off" : "contact on";
+        }
+        ComponentListener listener = listener();
+        if (publish && wasOpen != open && listener != null){
+            listener.breakerSwitched(this, open);
+        }
+        return wasOpen;
+    }
+
+    // called by the bank under its lock
+    void attachBank(BreakerBank bank, int slot){
+        this.bankSlot = slot;
+        this.bank = bank;
+    }
+
+    void detachBank(boolean open){
+        contactWear = open ? "contact off" : "contact on";
+        this.bank = null;
+        this.bankSlot = -1;
+    }
+
+    BreakerBank bank(){
+        return bank;
+    }
+
+    int bankSlot(){
+        return bankSlot;
+    }
+
+    static final int SNAPSHOT_BYTES = 1 + 8 * 2;
+
+    @Override
+    void writeParameters(ByteBuffer out) {
+        out.put((byte) (checkCircuitStatus() ? 1 : 0));
+        out.putDouble(breakingCapacity).putDouble(contactResistance);
+    }
+
+    @Override
+    void readParameters(ByteBuffer in) {
+        setContact(in.get() == 1, false);
+        breakingCapacity = in.getDouble();
+        contactResistance = in.getDouble();
+    }
+
+    // puts the contacts in the given position without any check or message, used to replay the journal
+    void restoreContact(boolean open) {
+        setContact(open, false);
+    }
+
     public void setTransformer(Transformer transformer) {
         this.transformer = transformer;
+        wiringChanged();
     }
 
 
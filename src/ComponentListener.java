@@ -0,0 +1,33 @@
+// callback used by the registry (and whoever subscribes to it) to be informed when something happens to a component,
+// default methods so that each listener implements only the events it cares about
+public interface ComponentListener {
+
+    default void componentRegistered(String componentID, ElectricalComponent ec) {
+    }
+
+    default void componentRemoved(String componentID, ElectricalComponent ec) {
+    }
+
+    default void statusChanged(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus) {
+    }
+
+    // electrical parameters used by operatingParametersValidation have been changed
+    default void parametersChanged(ElectricalComponent ec) {
+    }
+
+    // ec was connected to another upstream or downstream component (generator breaker, transformer feeding a breaker)
+    default void wiringChanged(ElectricalComponent ec) {
+    }
+
+    // contacts of a breaker moved (open = true when the circuit has been opened)
+    default void breakerSwitched(CircuitBreaker cb, boolean open) {
+    }
+
+    // bulk operation of a BreakerBank, published once: changed has a bit set for each bank slot that moved
+    // (bank.breaker(slot) gives the breaker). Not repeated as breakerSwitched events
+    default void breakersSwitched(BreakerBank bank, long[] changed, boolean open) {
+    }
+
+    default void maintenanceCompleted(MantainanceTask task, ElectricalComponent ec) {
+    }
+}
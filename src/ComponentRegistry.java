@@ -0,0 +1,261 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// thread safe replacement of the LinkedHashMap used by the controller. Every component receives a sequence number
+// when registered, the skip list ordered by that number keeps the insertion order, while the two secondary indexes
+// (by ComponentType and by PowerComponentStatus) give "all transformers" or "all FAULT components" without scanning
+// the whole grid. The status index is kept up to date by the components themselves through setStatus.
+public class ComponentRegistry extends AbstractMap<String, ElectricalComponent> implements ComponentListener {
+
+    private static final class Slot {
+        final String key;
+        final ElectricalComponent component;
+
+        Slot(String key, ElectricalComponent component) {
+            this.key = key;
+            this.component = component;
+        }
+    }
+
+    private final Map<String, Slot> byId = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Slot> inOrder = new ConcurrentSkipListMap<>();
+    private final Map<ComponentType, ConcurrentNavigableMap<Long, Slot>> byType = new EnumMap<>(ComponentType.class);
+    private final Map<PowerComponentStatus, ConcurrentNavigableMap<Long, Slot>> byStatus = new EnumMap<>(PowerComponentStatus.class);
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<ComponentListener> listeners = new CopyOnWriteArrayList<>();
+
+    public ComponentRegistry() {
+        // enum maps are filled once here and never modified later, so they can be read from any thread
+        for (ComponentType type : ComponentType.values()) {
+            byType.put(type, new ConcurrentSkipListMap<>());
+        }
+        for (PowerComponentStatus status : PowerComponentStatus.values()) {
+            byStatus.put(status, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    // same semantic as putIfAbsent: a component already registered under this id is not replaced
+    public boolean register(String componentID, ElectricalComponent ec) {
+        Slot slot = new Slot(componentID, ec);
+        if (byId.putIfAbsent(componentID, slot) != null) {
+            return false;
+        }
+        long seq = sequence.incrementAndGet();
+        synchronized (ec) { // setStatus locks on the component too, so the status index cannot miss a transition
+            ec.registrySequence = seq;
+            inOrder.put(seq, slot);
+            byType.get(ec.componentType).put(seq, slot);
+            byStatus.get(ec.getStatus()).put(seq, slot);
+            ec.attachListener(this);
+            // still under the component lock: a listener sees the registration before any later status change
+            for (ComponentListener listener : listeners) {
+                listener.componentRegistered(componentID, ec);
+            }
+        }
+        return true;
+    }
+
+    public ElectricalComponent unregister(String componentID) {
+        Slot slot = byId.remove(componentID);
+        if (slot == null) {
+            return null;
+        }
+        ElectricalComponent ec = slot.component;
+        synchronized (ec) {
+            long seq = ec.registrySequence;
+            ec.attachListener(null);
+            inOrder.remove(seq);
+            byType.get(ec.componentType).remove(seq);
+            byStatus.get(ec.getStatus()).remove(seq);
+            ec.registrySequence = -1;
+            for (ComponentListener listener : listeners) {
+                listener.componentRemoved(componentID, ec);
+            }
+        }
+        return ec;
+    }
+
+    // invoked by ElectricalComponent.setStatus while holding the component lock
+    @Override
+    public void statusChanged(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus) {
+        long seq = ec.registrySequence;
+        Slot slot = byStatus.get(oldStatus).remove(seq);
+        if (slot != null) {
+            byStatus.get(newStatus).put(seq, slot);
+        }
+        for (ComponentListener listener : listeners) {
+            listener.statusChanged(ec, oldStatus, newStatus);
+        }
+    }
+
+    @Override
+    public void parametersChanged(ElectricalComponent ec) {
+        for (ComponentListener listener : listeners) {
+            listener.parametersChanged(ec);
+        }
+    }
+
+    @Override
+    public void wiringChanged(ElectricalComponent ec) {
+        for (ComponentListener listener : listeners) {
+            listener.wiringChanged(ec);
+        }
+    }
+
+    @Override
+    public void breakerSwitched(CircuitBreaker cb, boolean open) {
+        for (ComponentListener listener : listeners) {
+            listener.breakerSwitched(cb, open);
+        }
+    }
+
+    @Override
+    public void breakersSwitched(BreakerBank bank, long[] changed, boolean open) {
+        for (ComponentListener listener : listeners) {
+            listener.breakersSwitched(bank, changed, open);
+        }
+    }
+
+    @Override
+    public void maintenanceCompleted(MantainanceTask task, ElectricalComponent ec) {
+        for (ComponentListener listener : listeners) {
+            listener.maintenanceCompleted(task, ec);
+        }
+    }
+
+    public void addListener(ComponentListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ComponentListener listener) {
+        listeners.remove(listener);
+    }
+
+    // live, insertion ordered views of the indexes
+    public Collection<ElectricalComponent> ofType(ComponentType type) {
+        return componentsOf(byType.get(type));
+    }
+
+    public Collection<ElectricalComponent> withStatus(PowerComponentStatus status) {
+        return componentsOf(byStatus.get(status));
+    }
+
+    // components of the given type registered after the one holding the given sequence number
+    public Collection<ElectricalComponent> ofTypeRegisteredAfter(ComponentType type, long seq) {
+        return componentsOf(byType.get(type).tailMap(seq, false));
+    }
+
+    public boolean hasStatus(PowerComponentStatus status) {
+        return !byStatus.get(status).isEmpty();
+    }
+
+    public String keyOf(ElectricalComponent ec) {
+        Slot slot = inOrder.get(ec.registrySequence);
+        return slot == null ? null : slot.key;
+    }
+
+    public long sequenceOf(ElectricalComponent ec) {
+        return ec.registrySequence;
+    }
+
+    private static Collection<ElectricalComponent> componentsOf(NavigableMap<Long, Slot> index) {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<ElectricalComponent> iterator() {
+                Iterator<Slot> it = index.values().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public ElectricalComponent next() {
+                        return it.next().component;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return index.size();
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return index.isEmpty();
+            }
+        };
+    }
+
+    // Map view, so that the callers of getComponentRegistry() keep working as before
+
+    @Override
+    public ElectricalComponent get(Object componentID) {
+        Slot slot = byId.get(componentID);
+        return slot == null ? null : slot.component;
+    }
+
+    @Override
+    public boolean containsKey(Object componentID) {
+        return byId.containsKey(componentID);
+    }
+
+    @Override
+    public ElectricalComponent put(String componentID, ElectricalComponent ec) {
+        ElectricalComponent previous = unregister(componentID);
+        register(componentID, ec);
+        return previous;
+    }
+
+    @Override
+    public ElectricalComponent putIfAbsent(String componentID, ElectricalComponent ec) {
+        return register(componentID, ec) ? null : get(componentID);
+    }
+
+    @Override
+    public ElectricalComponent remove(Object componentID) {
+        return componentID instanceof String ? unregister((String) componentID) : null;
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    @Override
+    public Set<Entry<String, ElectricalComponent>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, ElectricalComponent>> iterator() {
+                Iterator<Slot> it = inOrder.values().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, ElectricalComponent> next() {
+                        Slot slot = it.next();
+                        return new SimpleImmutableEntry<>(slot.key, slot.component);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return byId.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,316 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// splits the grid demand between the available generators at the least cost (lambda iteration on the quadratic cost
+// curves of PowerGenerator). Every unit running between its limits works at the same incremental cost lambda,
+// so its output is (lambda - costLinear) / (2 * costQuadratic), clamped to [minOutput, dispatchable capacity].
+//
+// The total output as a function of lambda is piecewise linear, it only changes slope where a unit reaches one of its
+// limits (two breakpoints per unit). The breakpoints are sorted once, and the engine keeps the sums of the segment
+// where the last lambda fell: a new demand, a unit tripping or coming back only moves across the breakpoints between
+// the old and the new lambda, instead of solving the whole fleet again. The outputs are then written only to the
+// generators whose set point actually moved.
+//
+// Listens to the registry: generators leaving OPERATIONAL are taken out, new generators or changed cost curves ask for
+// a rebuild of the breakpoints at the next dispatch.
+public class EconomicDispatch implements ComponentListener {
+    private static final double MW = 1e6;
+    private static final double MIN_QUADRATIC = 1e-6; // flat cost curves would make the total output jump
+    private static final double OUTPUT_TOLERANCE = 1; // W, smaller moves are not sent to the generator
+    private static final int RESUM_AFTER = 4096; // incremental updates before the sums are recomputed (rounding)
+
+    private final Supplier<List<PowerGenerator>> fleet;
+
+    // units, MW and cost per MWh
+    private PowerGenerator[] units = new PowerGenerator[0];
+    private final Map<PowerGenerator, Integer> unitIndex = new IdentityHashMap<>();
+    private double[] minimum = new double[0];
+    private double[] maximum = new double[0];
+    private double[] linear = new double[0];
+    private double[] quadratic = new double[0];
+    private boolean[] available = new boolean[0];
+    private double[] output = new double[0]; // W, last set point sent
+
+    // breakpoints sorted by lambda: unit * 2 for the lower limit, unit * 2 + 1 for the upper one
+    private double[] breakLambda = new double[0];
+    private int[] breakEvent = new int[0];
+    private int[] breakPosition = new int[0]; // event -> position in the sorted arrays
+    private int crossed; // breakpoints [0, crossed) are below the current lambda
+
+    // total output (MW) = constant + slope * lambda on the current segment, available units only
+    private double constant;
+    private double slope;
+    private int updates;
+
+    private boolean rebuild = true;
+    private double lambda;
+    private double demand = Double.NaN; // W
+    private double shortfall;
+    private int breakpointsWalked;
+
+    public EconomicDispatch(Supplier<List<PowerGenerator>> fleet) {
+        this.fleet = fleet;
+    }
+
+    // returns the system lambda (marginal cost per MWh) of the new dispatch
+    public double dispatch(double demand) {
+        PowerGenerator[] targets;
+        double[] setPoints;
+        synchronized (this) {
+            this.demand = demand;
+            if (rebuild) {
+                build();
+            }
+            solve(demand / MW);
+            targets = units;
+            setPoints = new double[units.length];
+            for (int i = 0; i < units.length; i++) {
+                setPoints[i] = Double.NaN;
+                if (!available[i]) {
+                    output[i] = Double.NaN; // written again when it is back
+                    continue;
+                }
+                double next = outputAt(i, lambda) * MW;
+                if (Double.isNaN(output[i]) || Math.abs(next - output[i]) >= OUTPUT_TOLERANCE) {
+                    setPoints[i] = next;
+                    output[i] = next;
+                }
+            }
+        }
+        // outside the lock: adjustOutput notifies the registry listeners, this one included
+        for (int i = 0; i < targets.length; i++) {
+            if (!Double.isNaN(setPoints[i])) {
+                targets[i].adjustOutput((int) setPoints[i]);
+            }
+        }
+        return lambda;
+    }
+
+    // same demand again, after units tripped or came back
+    public double redispatch() {
+        double last;
+        synchronized (this) {
+            last = demand;
+        }
+        return Double.isNaN(last) ? getLambda() : dispatch(last);
+    }
+
+    private void build() {
+        List<PowerGenerator> generators = fleet.get();
+        int n = generators.size();
+        units = generators.toArray(new PowerGenerator[0]);
+        unitIndex.clear();
+        minimum = new double[n];
+        maximum = new double[n];
+        linear = new double[n];
+        quadratic = new double[n];
+        available = new boolean[n];
+        output = new double[n];
+        for (int i = 0; i < n; i++) {
+            PowerGenerator gen = units[i];
+            unitIndex.put(gen, i);
+            maximum[i] = gen.getDispatchableCapacity() / MW;
+            minimum[i] = Math.min(gen.getMinOutput() / MW, maximum[i]);
+            linear[i] = gen.getCostLinear();
+            quadratic[i] = Math.max(gen.getCostQuadratic(), MIN_QUADRATIC);
+            available[i] = gen.getStatus() == PowerComponentStatus.OPERATIONAL;
+            output[i] = Double.NaN; // unknown after a rebuild, the next dispatch writes everybody
+        }
+        Integer[] order = new Integer[2 * n];
+        double[] lambdas = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            lambdas[2 * i] = linear[i] + 2 * quadratic[i] * minimum[i];
+            lambdas[2 * i + 1] = linear[i] + 2 * quadratic[i] * maximum[i];
+            order[2 * i] = 2 * i;
+            order[2 * i + 1] = 2 * i + 1;
+        }
+        // on equal lambda the lower limit comes first, a unit with minimum == maximum is free for an empty segment
+        Arrays.sort(order, (a, b) -> {
+            int byLambda = Double.compare(lambdas[a], lambdas[b]);
+            return byLambda != 0 ? byLambda : Integer.compare(a & 1, b & 1);
+        });
+        breakLambda = new double[2 * n];
+        breakEvent = new int[2 * n];
+        breakPosition = new int[2 * n];
+        for (int p = 0; p < order.length; p++) {
+            breakEvent[p] = order[p];
+            breakLambda[p] = lambdas[order[p]];
+            breakPosition[order[p]] = p;
+        }
+        crossed = 0;
+        lambda = breakLambda.length > 0 ? breakLambda[0] : 0;
+        resum();
+        rebuild = false;
+    }
+
+    // moves lambda across the breakpoints until the total output matches the demand (MW)
+    private void solve(double target) {
+        if (units.length == 0) {
+            shortfall = target * MW;
+            return;
+        }
+        int walked = 0;
+        while (crossed < breakLambda.length && totalAt(breakLambda[crossed]) < target) {
+            cross(crossed++, 1);
+            walked++;
+        }
+        while (crossed > 0 && totalAt(breakLambda[crossed - 1]) > target) {
+            cross(--crossed, -1);
+            walked++;
+        }
+        breakpointsWalked = walked;
+        double low = crossed > 0 ? breakLambda[crossed - 1] : breakLambda[0];
+        double high = crossed < breakLambda.length ? breakLambda[crossed] : breakLambda[breakLambda.length - 1];
+        lambda = slope > 0 ? Math.max(low, Math.min(high, (target - constant) / slope)) : (crossed > 0 ? low : high);
+        shortfall = Math.max(0, target - totalAt(lambda)) * MW;
+    }
+
+    private double totalAt(double lambda) {
+        return constant + slope * lambda;
+    }
+
+    // direction 1 when lambda goes up across the breakpoint, -1 when it goes back down
+    private void cross(int position, int direction) {
+        int event = breakEvent[position];
+        int unit = event >> 1;
+        if (!available[unit]) {
+            return;
+        }
+        double inverse = 1 / (2 * quadratic[unit]);
+        double free = -linear[unit] * inverse;
+        if ((event & 1) == 0) { // lower limit: from minimum to free
+            constant += direction * (free - minimum[unit]);
+            slope += direction * inverse;
+        }
+        else { // upper limit: from free to maximum
+            constant += direction * (maximum[unit] - free);
+            slope -= direction * inverse;
+        }
+        countUpdate();
+    }
+
+    // contribution of a unit on the current segment, added (sign 1) or removed (sign -1)
+    private void account(int unit, int sign) {
+        if (breakPosition[2 * unit + 1] < crossed) {
+            constant += sign * maximum[unit];
+        }
+        else if (breakPosition[2 * unit] < crossed) {
+            double inverse = 1 / (2 * quadratic[unit]);
+            constant -= sign * linear[unit] * inverse;
+            slope += sign * inverse;
+        }
+        else {
+            constant += sign * minimum[unit];
+        }
+    }
+
+    private void countUpdate() {
+        if (++updates >= RESUM_AFTER) {
+            resum();
+        }
+    }
+
+    private void resum() {
+        constant = 0;
+        slope = 0;
+        for (int i = 0; i < units.length; i++) {
+            if (available[i]) {
+                account(i, 1);
+            }
+        }
+        updates = 0;
+    }
+
+    private double outputAt(int unit, double lambda) {
+        double free = (lambda - linear[unit]) / (2 * quadratic[unit]);
+        return Math.max(minimum[unit], Math.min(maximum[unit], free));
+    }
+
+    private synchronized void setAvailable(PowerGenerator gen, boolean value) {
+        Integer unit = unitIndex.get(gen);
+        if (rebuild || unit == null || available[unit] == value) {
+            return;
+        }
+        available[unit] = value;
+        account(unit, value ? 1 : -1);
+        countUpdate();
+    }
+
+    // ComponentListener side
+
+    @Override
+    public void componentRegistered(String componentID, ElectricalComponent ec) {
+        if (ec instanceof PowerGenerator) {
+            markRebuild();
+        }
+    }
+
+    @Override
+    public void componentRemoved(String componentID, ElectricalComponent ec) {
+        if (ec instanceof PowerGenerator) {
+            markRebuild();
+        }
+    }
+
+    @Override
+    public void statusChanged(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus) {
+        if (ec instanceof PowerGenerator) {
+            setAvailable((PowerGenerator) ec, newStatus == PowerComponentStatus.OPERATIONAL);
+        }
+    }
+
+    // set points written by the dispatch land here too, only a different curve or limit needs a rebuild
+    @Override
+    public synchronized void parametersChanged(ElectricalComponent ec) {
+        Integer unit = ec instanceof PowerGenerator ? unitIndex.get(ec) : null;
+        if (unit == null || rebuild) {
+            return;
+        }
+        PowerGenerator gen = (PowerGenerator) ec;
+        if (gen.getCostLinear() != linear[unit]
+                || Math.max(gen.getCostQuadratic(), MIN_QUADRATIC) != quadratic[unit]
+                || gen.getDispatchableCapacity() / MW != maximum[unit]
+                || Math.min(gen.getMinOutput() / MW, maximum[unit]) != minimum[unit]) {
+            rebuild = true;
+        }
+    }
+
+    private synchronized void markRebuild() {
+        rebuild = true;
+    }
+
+    public synchronized double getLambda() {
+        return lambda;
+    }
+
+    // W of demand that the available units cannot cover (0 if covered)
+    public synchronized double getShortfall() {
+        return shortfall;
+    }
+
+    // breakpoints crossed by the last dispatch, 0 when the new demand fell on the same segment
+    public synchronized int getBreakpointsWalked() {
+        return breakpointsWalked;
+    }
+
+    // W, 0 if the generator is not dispatched
+    public synchronized double getSetPoint(PowerGenerator gen) {
+        Integer unit = unitIndex.get(gen);
+        return unit == null || Double.isNaN(output[unit]) ? 0 : output[unit];
+    }
+
+    // cost per hour of the last dispatch
+    public synchronized double getTotalCost() {
+        double total = 0;
+        for (int i = 0; i < units.length; i++) {
+            if (available[i]) {
+                double p = outputAt(i, lambda);
+                total += units[i].getCostNoLoad() + linear[i] * p + quadratic[i] * p * p;
+            }
+        }
+        return total;
+    }
+}
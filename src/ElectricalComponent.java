@@ -1,15 +1,21 @@
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 public abstract class ElectricalComponent {
     protected String componentId;
     protected ComponentType componentType;
-    protected PowerComponentStatus status;
+    protected volatile PowerComponentStatus status;
 
 
     private LocalDate installationDate;
     private LocalDate lastMaintenanceDate;
 
+    // set by the ComponentRegistry: the sequence keeps the insertion order, the listener keeps the status index in sync
+    long registrySequence = -1;
+    private volatile ComponentListener listener;
+    // epoch days in an int[], see MaintenanceHistory
+    private final MaintenanceHistory maintenanceHistory = new MaintenanceHistory();
 
     public ElectricalComponent(String componentId, ComponentType componentType, PowerComponentStatus status,
                                LocalDate installationDate, LocalDate lastMaintenanceDate) {
@@ -40,7 +46,34 @@ public abstract class ElectricalComponent {
 
     public abstract void performMantainance(TaskType taskType);
     public abstract double calculateEfficiency();
-    public abstract void addDateToMantainanceHist(LocalDate lastMaintenanceDate);
+
+    public void addDateToMantainanceHist(LocalDate lastMaintenanceDate){
+        maintenanceHistory.record(lastMaintenanceDate);
+    }
+
+    public LocalDate[] getLastMaintenances(int n){ // most recent first
+        return maintenanceHistory.lastMaintenances(n);
+    }
+
+    public int countMaintenancesBetween(LocalDate from, LocalDate to){
+        return maintenanceHistory.countBetween(from, to);
+    }
+
+    public double getMeanMaintenanceInterval(){ // days
+        return maintenanceHistory.meanIntervalDays();
+    }
+
+    MaintenanceHistory maintenanceHistory(){
+        return maintenanceHistory;
+    }
+
+    // binary snapshot of the electrical parameters, every component writes and reads back its own fields
+    // (same order in both methods), see GridSnapshot
+    void writeParameters(ByteBuffer out){
+    }
+
+    void readParameters(ByteBuffer in){
+    }
 
 //    public double getVoltage() {
 //        return voltage;
@@ -66,8 +99,52 @@ public abstract class ElectricalComponent {
         this.lastMaintenanceDate = lastMaintenanceDate;
     }
 
-    public void setStatus(PowerComponentStatus status) {
+    // synchronized so that two threads changing the same component cannot leave the registry status index behind
+    public synchronized void setStatus(PowerComponentStatus status) {
+        PowerComponentStatus oldStatus = this.status;
         this.status = status;
+        ComponentListener listener = this.listener;
+        if (oldStatus == status) {
+            return;
+        }
+        GridMetrics.shared().increment(GridMetrics.Counter.STATUS_CHANGES);
+        GridEvents.StatusChange event = new GridEvents.StatusChange();
+        if (event.shouldCommit()) {
+            event.componentId = componentId;
+            event.componentType = String.valueOf(componentType);
+            event.oldStatus = String.valueOf(oldStatus);
+            event.newStatus = String.valueOf(status);
+            event.commit();
+        }
+        GridEventLog.shared().statusChanged(this, oldStatus, status);
+        if (listener != null) {
+            listener.statusChanged(this, oldStatus, status);
+        }
+    }
+
+    // to be called by subclasses each time a value checked by operatingParametersValidation changes
+    protected void parametersChanged() {
+        ComponentListener listener = this.listener;
+        if (listener != null) {
+            listener.parametersChanged(this);
+        }
+    }
+
+    // to be called by subclasses each time a connection to an upstream or downstream component is changed
+    protected void wiringChanged() {
+        ComponentListener listener = this.listener;
+        if (listener != null) {
+            listener.wiringChanged(this);
+        }
+    }
+
+    // null while the component is not registered
+    protected ComponentListener listener() {
+        return listener;
+    }
+
+    void attachListener(ComponentListener listener) {
+        this.listener = listener;
     }
 
 
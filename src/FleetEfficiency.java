@@ -0,0 +1,418 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+// grid-wide power figures: power generated, losses in the transformers (Pin - Pout) and on the breaker contacts, and
+// the distribution of calculateEfficiency per ComponentType. Like GridIntegrityTracker the totals are running sums,
+// moved at each registration, removal and parameter change (of the component or of the generator feeding it), so a
+// dashboard asking report() does not walk the grid. A parameter or wiring change only queues the component (a CAS,
+// no lock, no allocation, queued once however many changes arrive); the queued ones are measured again by the next
+// report() or resync(), so a telemetry batch touching a generator many times costs one measure. The report shares the
+// histograms with the totals, which copy one before changing it again.
+// compute() does the full walk as a fork/join reduction, to audit the running sums or for a registry without
+// tracker; resync() measures everything again, it also clears the rounding left by months of additions and
+// subtractions of doubles.
+public class FleetEfficiency implements ComponentListener {
+    private static final ComponentType[] TYPES = ComponentType.values();
+    static final int BUCKETS = 1000; // efficiency histogram, 0.1% wide buckets over [0, 1), one more for 1 and above
+    private static final int MIN_CHUNK = 1024;
+
+    // what one component adds to the totals, kept to take it away at its next measure
+    private static final class Contribution {
+        final ElectricalComponent component;
+        ComponentType type;
+        ElectricalComponent upstream; // generator of a transformer, transformer of a breaker
+        double generated;
+        double transformerLoss;
+        double breakerLoss;
+        double efficiency; // NaN when it cannot be measured (breaker not wired, no input power)
+        // 1 while in the queue of the components to measure again, a lock-free stack linked through next
+        volatile int queued;
+        Contribution next;
+
+        Contribution(ElectricalComponent component) {
+            this.component = component;
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<Contribution> QUEUED =
+            AtomicIntegerFieldUpdater.newUpdater(Contribution.class, "queued");
+
+    private final Map<ElectricalComponent, Contribution> contributions = new ConcurrentHashMap<>();
+    private final AtomicReference<Contribution> changed = new AtomicReference<>();
+    // guarded by this
+    private final Map<ElectricalComponent, Set<ElectricalComponent>> dependents = new HashMap<>();
+    private final Totals totals = new Totals();
+
+    // losses are input * (1 - efficiency), so the loss coefficients stay in the components
+    private static void measure(ElectricalComponent ec, Contribution c) {
+        c.type = ec.componentType;
+        c.upstream = null;
+        c.generated = 0;
+        c.transformerLoss = 0;
+        c.breakerLoss = 0;
+        if (ec instanceof PowerGenerator) {
+            PowerGenerator generator = (PowerGenerator) ec;
+            c.generated = generator.getApparentPower();
+            c.efficiency = generator.calculateEfficiency();
+        }
+        else if (ec instanceof Transformer) {
+            Transformer transformer = (Transformer) ec;
+            c.upstream = transformer.getPowerGenerator();
+            c.efficiency = transformer.calculateEfficiency();
+            c.transformerLoss = lossOf(transformer.Pin(), c.efficiency);
+        }
+        else if (ec instanceof CircuitBreaker) {
+            Transformer transformer = ((CircuitBreaker) ec).transformer;
+            c.upstream = transformer;
+            c.efficiency = transformer == null ? Double.NaN : ec.calculateEfficiency();
+            c.breakerLoss = transformer == null ? 0 : lossOf(transformer.Pout(), c.efficiency);
+        }
+        else {
+            c.efficiency = ec.calculateEfficiency();
+        }
+    }
+
+    private static double lossOf(double input, double efficiency) {
+        return Double.isFinite(efficiency) ? input * (1 - efficiency) : 0;
+    }
+
+    // listener side
+
+    @Override
+    public synchronized void componentRegistered(String componentID, ElectricalComponent ec) {
+        Contribution c = new Contribution(ec);
+        measure(ec, c);
+        contributions.put(ec, c);
+        totals.add(c, 1);
+        link(ec, c.upstream);
+    }
+
+    @Override
+    public synchronized void componentRemoved(String componentID, ElectricalComponent ec) {
+        Contribution c = contributions.remove(ec);
+        if (c != null) { // if still queued, drain skips it
+            totals.add(c, -1);
+            unlink(ec, c.upstream);
+        }
+    }
+
+    @Override
+    public void parametersChanged(ElectricalComponent ec) {
+        enqueue(ec);
+    }
+
+    @Override
+    public void wiringChanged(ElectricalComponent ec) {
+        enqueue(ec);
+    }
+
+    private void enqueue(ElectricalComponent ec) {
+        Contribution c = contributions.get(ec);
+        if (c == null || !QUEUED.compareAndSet(c, 0, 1)) {
+            return; // not registered, or already waiting for its measure
+        }
+        Contribution head;
+        do {
+            head = changed.get();
+            c.next = head;
+        } while (!changed.compareAndSet(head, c));
+    }
+
+    // under this: measures again the components queued since the last drain
+    private void drain() {
+        Contribution c = changed.getAndSet(null);
+        while (c != null) {
+            Contribution next = c.next;
+            c.next = null;
+            c.queued = 0; // a change arriving from now on queues it again
+            if (contributions.get(c.component) == c) {
+                update(c);
+            }
+            c = next;
+        }
+    }
+
+    // measures the component again, then what is fed by it (generator -> transformers -> breakers)
+    private void update(Contribution c) {
+        ElectricalComponent oldUpstream = c.upstream;
+        totals.add(c, -1);
+        measure(c.component, c);
+        totals.add(c, 1);
+        if (oldUpstream != c.upstream) {
+            unlink(c.component, oldUpstream);
+            link(c.component, c.upstream);
+        }
+        for (ElectricalComponent fed : dependents.getOrDefault(c.component, Collections.emptySet())) {
+            Contribution f = contributions.get(fed);
+            if (f != null) {
+                update(f);
+            }
+        }
+    }
+
+    private void link(ElectricalComponent ec, ElectricalComponent upstream) {
+        if (upstream != null) {
+            dependents.computeIfAbsent(upstream, k -> new HashSet<>()).add(ec);
+        }
+    }
+
+    private void unlink(ElectricalComponent ec, ElectricalComponent upstream) {
+        Set<ElectricalComponent> fed = upstream == null ? null : dependents.get(upstream);
+        if (fed != null) {
+            fed.remove(ec);
+            if (fed.isEmpty()) {
+                dependents.remove(upstream);
+            }
+        }
+    }
+
+    // the running totals, without walking the grid (only the components changed since the last report are measured)
+    public synchronized Report report() {
+        drain();
+        return new Report(totals.share());
+    }
+
+    // measures every registered component again, for the components changed without telling (or to clear the drift)
+    public synchronized void resync() {
+        drain();
+        totals.clear();
+        dependents.clear();
+        for (Contribution c : contributions.values()) {
+            measure(c.component, c);
+            totals.add(c, 1);
+            link(c.component, c.upstream);
+        }
+    }
+
+    // full walk of the components as a parallel reduction: each leaf sums its own chunk in a private Totals, the
+    // partial totals are merged while joining
+    public static Report compute(Collection<ElectricalComponent> components, ForkJoinPool pool) {
+        ElectricalComponent[] all = components.toArray(new ElectricalComponent[0]);
+        int chunkSize = Math.max(MIN_CHUNK, all.length / (pool.getParallelism() * 4));
+        return new Report(pool.invoke(new Reduction(all, 0, all.length, chunkSize)));
+    }
+
+    private static final class Reduction extends RecursiveTask<Totals> {
+        private static final long serialVersionUID = 1L;
+
+        private final ElectricalComponent[] components;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        Reduction(ElectricalComponent[] components, int from, int to, int chunkSize) {
+            this.components = components;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from <= chunkSize) {
+                Totals totals = new Totals();
+                Contribution scratch = new Contribution(null);
+                for (int i = from; i < to; i++) {
+                    measure(components[i], scratch);
+                    totals.add(scratch, 1);
+                }
+                return totals;
+            }
+            int middle = (from + to) >>> 1;
+            Reduction left = new Reduction(components, from, middle, chunkSize);
+            Reduction right = new Reduction(components, middle, to, chunkSize);
+            left.fork();
+            Totals rightTotals = right.compute();
+            return left.join().merge(rightTotals);
+        }
+    }
+
+    private static int bucketOf(double efficiency) {
+        return efficiency >= 1 ? BUCKETS : (int) (efficiency * BUCKETS);
+    }
+
+    // sums of the contributions, for the running totals and for the partial results of the reduction
+    private static final class Totals {
+        double generatedPower;
+        double transformerLosses;
+        double breakerLosses;
+        final long[] counts = new long[TYPES.length];
+        final long[] measured = new long[TYPES.length]; // with a finite, non negative efficiency
+        final double[] efficiencySums = new double[TYPES.length];
+        final double[] efficiencySquares = new double[TYPES.length];
+        final long[][] histograms = new long[TYPES.length][BUCKETS + 1];
+        final boolean[] shared = new boolean[TYPES.length]; // histogram also held by a Report, copy before writing
+
+        // sign -1 takes a contribution away
+        void add(Contribution c, int sign) {
+            int t = c.type.ordinal();
+            generatedPower += sign * c.generated;
+            transformerLosses += sign * c.transformerLoss;
+            breakerLosses += sign * c.breakerLoss;
+            counts[t] += sign;
+            double efficiency = c.efficiency;
+            if (efficiency >= 0 && efficiency < Double.POSITIVE_INFINITY) { // NaN fails both
+                measured[t] += sign;
+                efficiencySums[t] += sign * efficiency;
+                efficiencySquares[t] += sign * efficiency * efficiency;
+                writableHistogram(t)[bucketOf(efficiency)] += sign;
+            }
+        }
+
+        private long[] writableHistogram(int t) {
+            if (shared[t]) {
+                histograms[t] = histograms[t].clone();
+                shared[t] = false;
+            }
+            return histograms[t];
+        }
+
+        Totals merge(Totals other) {
+            generatedPower += other.generatedPower;
+            transformerLosses += other.transformerLosses;
+            breakerLosses += other.breakerLosses;
+            for (int t = 0; t < TYPES.length; t++) {
+                counts[t] += other.counts[t];
+                measured[t] += other.measured[t];
+                efficiencySums[t] += other.efficiencySums[t];
+                efficiencySquares[t] += other.efficiencySquares[t];
+                long[] histogram = writableHistogram(t);
+                long[] source = other.histograms[t];
+                for (int b = 0; b < histogram.length; b++) {
+                    histogram[b] += source[b];
+                }
+            }
+            return this;
+        }
+
+        // copy of the sums, the histograms are handed over as they are and copied by this Totals at its next change
+        Totals share() {
+            Totals copy = new Totals();
+            copy.generatedPower = generatedPower;
+            copy.transformerLosses = transformerLosses;
+            copy.breakerLosses = breakerLosses;
+            for (int t = 0; t < TYPES.length; t++) {
+                copy.counts[t] = counts[t];
+                copy.measured[t] = measured[t];
+                copy.efficiencySums[t] = efficiencySums[t];
+                copy.efficiencySquares[t] = efficiencySquares[t];
+                copy.histograms[t] = histograms[t];
+                copy.shared[t] = true;
+                shared[t] = true;
+            }
+            return copy;
+        }
+
+        void clear() {
+            generatedPower = 0;
+            transformerLosses = 0;
+            breakerLosses = 0;
+            Arrays.fill(counts, 0);
+            Arrays.fill(measured, 0);
+            Arrays.fill(efficiencySums, 0);
+            Arrays.fill(efficiencySquares, 0);
+            for (int t = 0; t < TYPES.length; t++) {
+                histograms[t] = new long[BUCKETS + 1];
+                shared[t] = false;
+            }
+        }
+    }
+
+    // immutable figures at one moment, in W and efficiency as a fraction
+    public static final class Report {
+        private final Totals totals;
+
+        private Report(Totals totals) {
+            this.totals = totals;
+        }
+
+        public double getGeneratedPower() {
+            return totals.generatedPower;
+        }
+
+        public double getTransformerLosses() {
+            return totals.transformerLosses;
+        }
+
+        public double getBreakerLosses() {
+            return totals.breakerLosses;
+        }
+
+        public double getTotalLosses() {
+            return totals.transformerLosses + totals.breakerLosses;
+        }
+
+        public long getCount(ComponentType type) {
+            return totals.counts[type.ordinal()];
+        }
+
+        // components of the type whose efficiency could be computed
+        public long getMeasuredCount(ComponentType type) {
+            return totals.measured[type.ordinal()];
+        }
+
+        public double getMeanEfficiency(ComponentType type) {
+            long n = totals.measured[type.ordinal()];
+            return n == 0 ? Double.NaN : totals.efficiencySums[type.ordinal()] / n;
+        }
+
+        public double getEfficiencyStdDev(ComponentType type) {
+            long n = totals.measured[type.ordinal()];
+            if (n == 0) {
+                return Double.NaN;
+            }
+            double mean = totals.efficiencySums[type.ordinal()] / n;
+            return Math.sqrt(Math.max(0, totals.efficiencySquares[type.ordinal()] / n - mean * mean));
+        }
+
+        // upper edge of the 0.1% bucket holding the percentile, 1 for the ones at 1 and above
+        public double getEfficiencyPercentile(ComponentType type, double fraction) {
+            long n = totals.measured[type.ordinal()];
+            if (n == 0) {
+                return Double.NaN;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * n));
+            long seen = 0;
+            long[] histogram = totals.histograms[type.ordinal()];
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += histogram[b];
+                if (seen >= rank) {
+                    return (b + 1) / (double) BUCKETS;
+                }
+            }
+            return 1;
+        }
+
+        // components per bucket, bucket b = [b, b + 1) / BUCKETS and the last one 1 and above
+        public long[] getEfficiencyHistogram(ComponentType type) {
+            return totals.histograms[type.ordinal()].clone();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                    "generated=%.3e W transformer losses=%.3e W breaker losses=%.3e W",
+                    getGeneratedPower(), getTransformerLosses(), getBreakerLosses()));
+            for (ComponentType type : TYPES) {
+                if (getCount(type) > 0) {
+                    sb.append(String.format(Locale.ROOT, "%n  %s count=%d mean=%.4f sd=%.4f p10=%.3f p50=%.3f p90=%.3f",
+                            type, getCount(type), getMeanEfficiency(type), getEfficiencyStdDev(type),
+                            getEfficiencyPercentile(type, 0.1), getEfficiencyPercentile(type, 0.5),
+                            getEfficiencyPercentile(type, 0.9)));
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
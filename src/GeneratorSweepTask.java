@@ -0,0 +1,71 @@
+import java.util.concurrent.RecursiveTask;
+
+// fork/join piece of the parallel monitorGridStatus. The generators array is split in halves until the chunk is small
+// enough, each leaf checks its own generators and keeps the positions of the broken ones in a private array, so
+// there is no shared collection to fight for. Results are joined left to right, that keeps them in registry order.
+public class GeneratorSweepTask extends RecursiveTask<GeneratorSweepTask.Result> {
+    private static final long serialVersionUID = 1L;
+
+    private final ElectricalComponent[] generators;
+    private final int from;
+    private final int to;
+    private final int chunkSize;
+
+    public GeneratorSweepTask(ElectricalComponent[] generators, int from, int to, int chunkSize) {
+        this.generators = generators;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    protected Result compute() {
+        if (to - from <= chunkSize) {
+            Result result = new Result();
+            for (int i = from; i < to; i++) {
+                ElectricalComponent component = generators[i];
+                if (component instanceof PowerGenerator && ((PowerGenerator) component).getExcitationField() < 10) {
+                    component.setStatus(PowerComponentStatus.FAULT);
+                    result.add(i);
+                }
+            }
+            return result;
+        }
+        int middle = (from + to) >>> 1;
+        GeneratorSweepTask left = new GeneratorSweepTask(generators, from, middle, chunkSize);
+        GeneratorSweepTask right = new GeneratorSweepTask(generators, middle, to, chunkSize);
+        left.fork();
+        Result rightResult = right.compute();
+        return left.join().append(rightResult);
+    }
+
+    // positions (in the generators array) of the generators found broken
+    public static final class Result {
+        private int[] positions = new int[0];
+        private int size;
+
+        void add(int position) {
+            if (size == positions.length) {
+                int[] bigger = new int[Math.max(8, size * 2)];
+                System.arraycopy(positions, 0, bigger, 0, size);
+                positions = bigger;
+            }
+            positions[size++] = position;
+        }
+
+        Result append(Result other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.positions[i]);
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int position(int i) {
+            return positions[i];
+        }
+    }
+}
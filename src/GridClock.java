@@ -0,0 +1,85 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// the time every time dependent part of the grid goes through: breaker trip delays, maintenance dates, generator
+// start and stop. By default it is the wall clock (WallClock); installing a SimulationEngine makes all of them run
+// on virtual time, so months of operation take seconds and the same seed gives the same run.
+public abstract class GridClock {
+    private static volatile GridClock current = new WallClock(2);
+
+    public static GridClock current() {
+        return current;
+    }
+
+    // returns the clock installed before, to put it back after a simulation
+    public static GridClock install(GridClock clock) {
+        GridClock previous = current;
+        current = clock;
+        return previous;
+    }
+
+    public interface Timer {
+        // false if the action already ran (or was already cancelled)
+        boolean cancel();
+    }
+
+    public abstract long currentTimeMillis();
+
+    public LocalDate today() {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(currentTimeMillis()), ZoneOffset.UTC);
+    }
+
+    public abstract Timer schedule(Runnable action, long delay, TimeUnit unit);
+
+    // runs the action every period after the first delay, until the timer is cancelled
+    public Timer scheduleAtFixedRate(Runnable action, long initialDelay, long period, TimeUnit unit) {
+        PeriodicTimer timer = new PeriodicTimer(action, unit.toMillis(period));
+        timer.next = schedule(timer, initialDelay, unit);
+        return timer;
+    }
+
+    // waits for something completed by a scheduled action: the wall clock blocks, the simulation runs its events
+    // until the future is done
+    public abstract <T> T await(CompletableFuture<T> future) throws InterruptedException, ExecutionException;
+
+    // random numbers of the grid models (power factor and so on), seeded in a simulation
+    public abstract double nextRandom();
+
+    private final class PeriodicTimer implements Runnable, Timer {
+        private final Runnable action;
+        private final long period;
+        private volatile Timer next;
+        private volatile boolean cancelled;
+
+        PeriodicTimer(Runnable action, long period) {
+            this.action = action;
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            next = schedule(this, period, TimeUnit.MILLISECONDS); // before running, so a slow action keeps the rate
+            action.run();
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            Timer pending = next;
+            if (pending != null) {
+                pending.cancel();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// operator log of the protection path (breaker openings and closings, bulk switching of a bank, trips, cooling,
+// failed maintenance tasks, status changes), written without making the caller wait for the console or the disk. A call only fills a
+// preallocated record in a ring (parallel arrays like StatusEventBus: event type, component, grid time, one integer
+// and one double argument) and returns; a background thread turns the records into text with the Encoder of their
+// type and writes the lines by batches to the Output, the console unless rolling files are installed. What is still
+// in the ring of the shared log at exit is written by a shutdown hook. During a fault storm the protection path never
+// blocks on I/O: when the writer is more than a ring behind, the oldest records are overwritten and counted as lost
+// (a line in the log says how many).
+public class GridEventLog implements AutoCloseable {
+    private static final PowerComponentStatus[] STATUSES = PowerComponentStatus.values();
+    private static final Type[] TYPES = Type.values();
+    private static final DateTimeFormatter SECOND =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    private static volatile GridEventLog shared = new GridEventLog(1 << 14, console());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                shared.close();
+            } catch (IOException e) {
+                System.err.println("event log not written: " + e);
+            }
+        }, "grid-event-log-close"));
+    }
+
+    public static GridEventLog shared() {
+        return shared;
+    }
+
+    // returns the log installed before, to be closed by the caller (or put back)
+    public static GridEventLog install(GridEventLog log) {
+        GridEventLog previous = shared;
+        shared = log;
+        return previous;
+    }
+
+    // turns one record into the text of its line, after the time, the type and the component id. Runs on the
+    // writer thread only
+    public interface Encoder {
+        void encode(StringBuilder out, ElectricalComponent ec, long arg, double value, Object detail);
+    }
+
+    public enum Type {
+        STATUS_CHANGE((out, ec, arg, value, detail) ->
+                out.append(STATUSES[(int) (arg >>> 8)]).append(" -> ").append(STATUSES[(int) (arg & 0xff)])),
+        BREAKER_OPENED((out, ec, arg, value, detail) -> out.append("contact status : contact off")),
+        BREAKER_CLOSED((out, ec, arg, value, detail) -> out.append("circuit closed")),
+        CLOSE_REFUSED((out, ec, arg, value, detail) ->
+                out.append("contact not closed. Current to much high: ").append(value).append(" A")),
+        TRIP((out, ec, arg, value, detail) -> out.append("tripped at ").append(value).append(" A")),
+        BANK_SWITCHED((out, ec, arg, value, detail) ->
+                out.append(arg >>> 1).append(" breakers ").append((arg & 1) != 0 ? "opened" : "closed")),
+        TRIP_FAILED((out, ec, arg, value, detail) -> out.append("trip not completed: ").append(detail)),
+        TASK_FAILED((out, ec, arg, value, detail) -> {
+            Object[] failure = (Object[]) detail; // task id, exception with its stack trace
+            StringWriter trace = new StringWriter();
+            ((Throwable) failure[1]).printStackTrace(new PrintWriter(trace));
+            out.append("maintenance task ").append(failure[0]).append(" failed: ").append(trace.toString().strip());
+        }),
+        TASK_DROPPED((out, ec, arg, value, detail) ->
+                out.append("maintenance task ").append(detail).append(" dropped, a task with the same id is queued")),
+        COOLING_ENGAGED((out, ec, arg, value, detail) -> {
+            out.append("cooling system engaged");
+            if (!Double.isNaN(value)) {
+                out.append(" at ").append(value).append(" C");
+            }
+        });
+
+        private final Encoder encoder;
+
+        Type(Encoder encoder) {
+            this.encoder = encoder;
+        }
+    }
+
+    // where the lines go, called by the writer thread with all the lines of a batch
+    public interface Output extends AutoCloseable {
+        void write(CharSequence lines) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    private final int mask;
+    private final byte[] types;
+    private final ElectricalComponent[] components;
+    private final long[] times;
+    private final long[] args;
+    private final double[] values;
+    private final Object[] details;
+    // sequence held by each slot, negative while a producer writes it (same seqlock as StatusEventBus)
+    private final AtomicLongArray published;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Encoder[] encoders = new Encoder[TYPES.length];
+    // status transitions already go to the journal, the status bus and JFR: off unless an operator trace is wanted
+    private volatile int enabled = ((1 << TYPES.length) - 1) & ~(1 << Type.STATUS_CHANGE.ordinal());
+
+    private final Output output;
+    private final Thread writer;
+    private final AtomicLong lost = new AtomicLong();
+    private volatile long written; // next sequence to write
+    private volatile boolean running = true;
+    private volatile IOException failure;
+    // writer thread only: the date and time down to the second, formatted again when the second changes
+    private long formattedSecond = Long.MIN_VALUE;
+    private String secondText;
+
+    public GridEventLog(int capacity, Output output) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        }
+        mask = capacity - 1;
+        types = new byte[capacity];
+        components = new ElectricalComponent[capacity];
+        times = new long[capacity];
+        args = new long[capacity];
+        values = new double[capacity];
+        details = new Object[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        for (Type type : TYPES) {
+            encoders[type.ordinal()] = type.encoder;
+        }
+        this.output = output;
+        writer = new Thread(this::writeLoop, "grid-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // producer side, a few stores and no allocation (the detail of TRIP_FAILED is the exception already thrown)
+
+    public void statusChanged(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus) {
+        log(Type.STATUS_CHANGE, ec, (oldStatus.ordinal() << 8) | newStatus.ordinal(), Double.NaN, null);
+    }
+
+    public void breakerOpened(CircuitBreaker cb) {
+        log(Type.BREAKER_OPENED, cb, 0, Double.NaN, null);
+    }
+
+    public void breakerClosed(CircuitBreaker cb) {
+        log(Type.BREAKER_CLOSED, cb, 0, Double.NaN, null);
+    }
+
+    // one line for a whole bulk operation of a bank (openAll, switchRange, switchSection), not one per breaker
+    public void bankSwitched(int count, boolean open) {
+        log(Type.BANK_SWITCHED, null, ((long) count << 1) | (open ? 1 : 0), Double.NaN, null);
+    }
+
+    public void closeRefused(CircuitBreaker cb, double current) {
+        log(Type.CLOSE_REFUSED, cb, 0, current, null);
+    }
+
+    public void trip(CircuitBreaker cb, double current) {
+        log(Type.TRIP, cb, 0, current, null);
+    }
+
+    public void tripFailed(CircuitBreaker cb, Throwable cause) {
+        log(Type.TRIP_FAILED, cb, 0, Double.NaN, cause.getMessage());
+    }
+
+    // failure path, the one allocation is the pair
+    public void taskFailed(ElectricalComponent ec, String taskId, Throwable cause) {
+        log(Type.TASK_FAILED, ec, 0, Double.NaN, new Object[]{taskId, cause});
+    }
+
+    public void taskDropped(ElectricalComponent ec, String taskId) {
+        log(Type.TASK_DROPPED, ec, 0, Double.NaN, taskId);
+    }
+
+    public void coolingEngaged(Transformer transformer, double temperature) {
+        log(Type.COOLING_ENGAGED, transformer, 0, temperature, null);
+    }
+
+    public void log(Type type, ElectricalComponent ec, long arg, double value, Object detail) {
+        if ((enabled & (1 << type.ordinal())) == 0) {
+            return;
+        }
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        published.set(slot, -1 - sequence);
+        VarHandle.storeStoreFence();
+        types[slot] = (byte) type.ordinal();
+        components[slot] = ec;
+        times[slot] = GridClock.current().currentTimeMillis();
+        args[slot] = arg;
+        values[slot] = value;
+        details[slot] = detail;
+        published.set(slot, sequence);
+        if (sequence == written) { // the writer may be parked on an empty ring
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public synchronized void setEnabled(Type type, boolean on) {
+        enabled = on ? enabled | (1 << type.ordinal()) : enabled & ~(1 << type.ordinal());
+    }
+
+    // to change the text of one event type, e.g. for a log collector expecting key=value pairs
+    public void setEncoder(Type type, Encoder encoder) {
+        encoders[type.ordinal()] = encoder;
+    }
+
+    // writer side
+
+    private void writeLoop() {
+        StringBuilder lines = new StringBuilder(1 << 16);
+        long next = written;
+        int idle = 0;
+        while (true) {
+            boolean stopping = !running; // read before the sequence, what was logged before close() is written
+            long end = nextSequence.get();
+            while (next < end && lines.length() < (1 << 20)) {
+                int slot = (int) (next & mask);
+                long seen = published.get(slot);
+                if (seen >= 0 ? seen < next : seen >= -1 - next) {
+                    break; // still being written
+                }
+                if (seen == next) {
+                    int type = types[slot];
+                    ElectricalComponent ec = components[slot];
+                    long time = times[slot];
+                    long arg = args[slot];
+                    double value = values[slot];
+                    Object detail = details[slot];
+                    VarHandle.acquireFence();
+                    if (published.get(slot) == next) {
+                        format(lines, type, ec, time, arg, value, detail);
+                        next++;
+                        continue;
+                    }
+                }
+                long oldest = Math.max(next + 1, nextSequence.get() - mask);
+                lost.addAndGet(oldest - next);
+                lines.append(oldest - next).append(" events lost\n");
+                next = oldest;
+                end = Math.max(end, next);
+            }
+            if (lines.length() > 0) {
+                try {
+                    output.write(lines);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                lines.setLength(0);
+                idle = 0;
+            }
+            boolean progressed = next != written;
+            written = next;
+            if (stopping && next >= nextSequence.get()) {
+                return;
+            }
+            if (progressed && next < nextSequence.get()) {
+                idle = 0;
+                continue;
+            }
+            // empty ring, or a producer still filling the next slot: spin a little, then park
+            if (++idle < 100) {
+                Thread.onSpinWait();
+            }
+            else {
+                LockSupport.parkNanos(this, 1_000_000);
+            }
+        }
+    }
+
+    private void format(StringBuilder out, int type, ElectricalComponent ec, long time, long arg, double value,
+                        Object detail) {
+        long second = Math.floorDiv(time, 1000);
+        if (second != formattedSecond) {
+            formattedSecond = second;
+            secondText = SECOND.format(Instant.ofEpochSecond(second));
+        }
+        int millis = Math.floorMod(time, 1000);
+        out.append(secondText).append('.').append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10))
+                .append((char) ('0' + millis % 10)).append('Z');
+        out.append(' ').append(TYPES[type]).append(' ').append(ec == null ? "-" : ec.componentId).append(' ');
+        try {
+            encoders[type].encode(out, ec, arg, value, detail);
+        } catch (RuntimeException e) { // a broken encoder loses its line, not the log
+            out.append("encoder failed: ").append(e);
+        }
+        out.append('\n');
+    }
+
+    public long getLoggedCount() {
+        return nextSequence.get();
+    }
+
+    public long getLostEvents() {
+        return lost.get();
+    }
+
+    // records not written yet
+    public long getBacklog() {
+        return nextSequence.get() - written;
+    }
+
+    // writes what was logged so far, then stops the writer and closes the output
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        output.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // System.out as it is at write time (the benchmark swaps it while measuring)
+    public static Output console() {
+        return lines -> {
+            PrintStream out = System.out;
+            out.print(lines);
+            out.flush();
+        };
+    }
+
+    // events-<n>.log files in a directory: a new file once the current one passes maxFileBytes, only the last
+    // maxFiles are kept. Numbering goes on from the files already there
+    public static final class RollingFile implements Output {
+        private static final String PREFIX = "events-";
+        private static final String SUFFIX = ".log";
+
+        private final Path directory;
+        private final long maxFileBytes;
+        private final int maxFiles;
+        private FileChannel file;
+        private long fileBytes;
+        private long index;
+
+        public RollingFile(Path directory, long maxFileBytes, int maxFiles) throws IOException {
+            if (maxFiles < 1) {
+                throw new IllegalArgumentException("at least one file must be kept");
+            }
+            this.directory = directory;
+            this.maxFileBytes = maxFileBytes;
+            this.maxFiles = maxFiles;
+            Files.createDirectories(directory);
+            List<Path> existing = files(directory);
+            index = existing.isEmpty() ? 0 : indexOf(existing.get(existing.size() - 1)) + 1;
+            open();
+        }
+
+        @Override
+        public void write(CharSequence lines) throws IOException {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(lines));
+            if (fileBytes > 0 && fileBytes + bytes.remaining() > maxFileBytes) {
+                file.close();
+                index++;
+                open();
+            }
+            fileBytes += bytes.remaining();
+            while (bytes.hasRemaining()) {
+                file.write(bytes);
+            }
+        }
+
+        private void open() throws IOException {
+            file = FileChannel.open(directory.resolve(String.format("%s%012d%s", PREFIX, index, SUFFIX)),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            fileBytes = 0;
+            List<Path> all = files(directory);
+            for (int i = 0; i < all.size() - maxFiles; i++) {
+                Files.deleteIfExists(all.get(i));
+            }
+        }
+
+        // oldest first
+        private static List<Path> files(Path directory) throws IOException {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+            files.sort(null); // fixed width numbers
+            return files;
+        }
+
+        private static long indexOf(Path file) {
+            String name = file.getFileName().toString();
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// custom Flight Recorder events of the grid, recorded with
+//     java -XX:StartFlightRecording=filename=grid.jfr ...
+// and shown under "Power Grid" in JDK Mission Control. When the recording is off (or the event disabled) creating
+// and committing an event costs close to nothing, the JIT removes the allocation.
+public final class GridEvents {
+
+    private GridEvents() {
+    }
+
+    @Name("grid.StatusChange")
+    @Label("Status Change")
+    @Category("Power Grid")
+    public static class StatusChange extends Event {
+        @Label("Component")
+        String componentId;
+        @Label("Type")
+        String componentType;
+        @Label("Old Status")
+        String oldStatus;
+        @Label("New Status")
+        String newStatus;
+    }
+
+    @Name("grid.BreakerTrip")
+    @Label("Breaker Trip")
+    @Category("Power Grid")
+    @Description("From the trip request to the contacts open, the mechanical delay included")
+    public static class BreakerTrip extends Event {
+        @Label("Breaker")
+        String breakerId;
+        @Label("Current")
+        double current;
+        @Label("Cancelled")
+        boolean cancelled;
+    }
+
+    @Name("grid.Maintenance")
+    @Label("Maintenance")
+    @Category("Power Grid")
+    public static class Maintenance extends Event {
+        @Label("Task")
+        String taskId;
+        @Label("Component")
+        String componentId;
+        @Label("Task Type")
+        String taskType;
+    }
+
+    @Name("grid.MonitorSweep")
+    @Label("Monitor Sweep")
+    @Category("Power Grid")
+    public static class MonitorSweep extends Event {
+        @Label("Generators")
+        int generators;
+        @Label("Faults")
+        int faults;
+        @Label("Parallel")
+        boolean parallel;
+    }
+
+    @Name("grid.EmergencyShutdown")
+    @Label("Emergency Shutdown")
+    @Category("Power Grid")
+    public static class EmergencyShutdown extends Event {
+        @Label("Components")
+        int components;
+    }
+}
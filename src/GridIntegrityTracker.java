@@ -0,0 +1,188 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// live counters behind validateGridIntegrity. Instead of walking the registry at every telemetry tick, the counters
+// are moved at each status transition and each parameter change, so the verdict is a read of a few integers.
+// A full rescan (resync) is still available to audit that the counters did not drift.
+public class GridIntegrityTracker implements ComponentListener {
+    private static final int STATUSES = PowerComponentStatus.values().length;
+
+    // one counter for every (component type, status) couple
+    private final AtomicIntegerArray statusCounts =
+            new AtomicIntegerArray(ComponentType.values().length * STATUSES);
+    private final Set<ElectricalComponent> failingValidation = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger failingCount = new AtomicInteger();
+
+    // the validation of a breaker depends on the power of the generator behind its transformer, so a change on the
+    // generator must revalidate the components fed by it as well
+    private final Map<ElectricalComponent, Set<ElectricalComponent>> dependents = new ConcurrentHashMap<>();
+    // upstream each registered component was linked to, to unlink it when it is wired somewhere else
+    private final Map<ElectricalComponent, ElectricalComponent> upstreams = new ConcurrentHashMap<>();
+
+    // the events move the counters under the read lock (they are atomic among themselves), resync takes the write
+    // lock so that no event lands between the reset and the rescan
+    private final ReadWriteLock auditLock = new ReentrantReadWriteLock();
+
+    @Override
+    public void componentRegistered(String componentID, ElectricalComponent ec) {
+        auditLock.readLock().lock();
+        try {
+            statusCounts.incrementAndGet(slot(ec.componentType, ec.getStatus()));
+            link(ec, upstreamOf(ec));
+            revalidate(ec);
+        } finally {
+            auditLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void componentRemoved(String componentID, ElectricalComponent ec) {
+        auditLock.readLock().lock();
+        try {
+            statusCounts.decrementAndGet(slot(ec.componentType, ec.getStatus()));
+            unlink(ec);
+            if (failingValidation.remove(ec)) {
+                failingCount.decrementAndGet();
+            }
+        } finally {
+            auditLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void statusChanged(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus) {
+        auditLock.readLock().lock();
+        try {
+            statusCounts.decrementAndGet(slot(ec.componentType, oldStatus));
+            statusCounts.incrementAndGet(slot(ec.componentType, newStatus));
+        } finally {
+            auditLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void parametersChanged(ElectricalComponent ec) {
+        auditLock.readLock().lock();
+        try {
+            revalidate(ec);
+        } finally {
+            auditLock.readLock().unlock();
+        }
+    }
+
+    // setTransformer / setPowerGenerator: the component now depends on another upstream, its validation as well
+    @Override
+    public void wiringChanged(ElectricalComponent ec) {
+        auditLock.readLock().lock();
+        try {
+            ElectricalComponent upstream = upstreamOf(ec);
+            if (upstreams.get(ec) != upstream) {
+                unlink(ec);
+                link(ec, upstream);
+            }
+            revalidate(ec);
+        } finally {
+            auditLock.readLock().unlock();
+        }
+    }
+
+    private void link(ElectricalComponent ec, ElectricalComponent upstream) {
+        if (upstream != null) {
+            upstreams.put(ec, upstream);
+            dependents.computeIfAbsent(upstream, k -> ConcurrentHashMap.newKeySet()).add(ec);
+        }
+    }
+
+    private void unlink(ElectricalComponent ec) {
+        ElectricalComponent upstream = upstreams.remove(ec);
+        if (upstream != null) {
+            Set<ElectricalComponent> fed = dependents.get(upstream);
+            if (fed != null) {
+                fed.remove(ec);
+            }
+        }
+    }
+
+    // checks the component and everything fed by it (generator -> transformers -> breakers)
+    private void revalidate(ElectricalComponent ec) {
+        boolean valid = ec.operatingParametersValidation();
+        if (valid) {
+            if (failingValidation.remove(ec)) {
+                failingCount.decrementAndGet();
+            }
+        }
+        else if (failingValidation.add(ec)) {
+            failingCount.incrementAndGet();
+        }
+        for (ElectricalComponent fed : dependents.getOrDefault(ec, Collections.emptySet())) {
+            revalidate(fed);
+        }
+    }
+
+    private static ElectricalComponent upstreamOf(ElectricalComponent ec) {
+        if (ec instanceof Transformer) {
+            return ((Transformer) ec).getPowerGenerator();
+        }
+        if (ec instanceof CircuitBreaker) {
+            return ((CircuitBreaker) ec).transformer;
+        }
+        return null;
+    }
+
+    private static int slot(ComponentType type, PowerComponentStatus status) {
+        return type.ordinal() * STATUSES + status.ordinal();
+    }
+
+    public int count(ComponentType type, PowerComponentStatus status) {
+        return statusCounts.get(slot(type, status));
+    }
+
+    public int count(PowerComponentStatus status) {
+        int total = 0;
+        for (ComponentType type : ComponentType.values()) {
+            total += count(type, status);
+        }
+        return total;
+    }
+
+    public int getFailingValidationCount() {
+        return failingCount.get();
+    }
+
+    // same rules of the old full scan: every component passes its validation, nothing is FAULT or OFFLINE and at
+    // least one generator, one transformer and one circuit breaker are operational
+    public boolean isGridIntact() {
+        return failingCount.get() == 0
+                && count(PowerComponentStatus.FAULT) == 0
+                && count(PowerComponentStatus.OFFLINE) == 0
+                && count(ComponentType.GENERATOR, PowerComponentStatus.OPERATIONAL) > 0
+                && count(ComponentType.TRANSFORMER, PowerComponentStatus.OPERATIONAL) > 0
+                && count(ComponentType.CIRCUIT_BREAKER, PowerComponentStatus.OPERATIONAL) > 0;
+    }
+
+    // rebuilds all the counters from scratch, to be used only for consistency audits
+    public void resync(ComponentRegistry registry) {
+        auditLock.writeLock().lock();
+        try {
+            for (int i = 0; i < statusCounts.length(); i++) {
+                statusCounts.set(i, 0);
+            }
+            failingValidation.clear();
+            failingCount.set(0);
+            for (ElectricalComponent ec : registry.values()) {
+                statusCounts.incrementAndGet(slot(ec.componentType, ec.getStatus()));
+                if (!ec.operatingParametersValidation() && failingValidation.add(ec)) {
+                    failingCount.incrementAndGet();
+                }
+            }
+        } finally {
+            auditLock.writeLock().unlock();
+        }
+    }
+}
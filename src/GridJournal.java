@@ -0,0 +1,492 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// write ahead journal of the state changes (status transitions, breaker open/close, maintenance completed).
+// Producers only copy the record in the active buffer under a short lock and go on; a background thread swaps the
+// buffers, writes the whole batch and fsyncs once for all of it (group commit), so monitorGridStatus never waits for
+// the disk. Files roll when a segment is full, each record has its own CRC32 so a torn tail after a crash is
+// recognised and ignored. On startup the journal is replayed on top of the latest GridSnapshot (see recover).
+// A failed write is final: the flusher stops, the durable lsn stays before the failed batch and every following
+// append or awaitDurable throws, nothing is acknowledged that is not on disk. Segments entirely older than a
+// snapshot are deleted once the snapshot is written (retireBefore).
+//
+// record: int length | long lsn | byte type | payload | int crc32(lsn, type, payload)
+// a BreakerBank bulk switch is one BULK record with the mask of the slots that moved (split in pieces only when
+// larger than half a buffer); the slots are resolved at replay through the slots saved in the snapshot and the SLOT
+// records written when a breaker is registered afterwards.
+public class GridJournal implements ComponentListener, AutoCloseable {
+    private static final byte STATUS = 1;       // key, status ordinal
+    private static final byte BREAKER = 2;      // key, 1 = open
+    private static final byte MAINTENANCE = 3;  // taskId, componentId
+    private static final byte SLOT = 4;         // key, bank slot (int)
+    private static final byte BULK = 5;         // 1 = open, first word, word count, words of the mask (long)
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + 1;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentSize;
+    private final ComponentRegistry registry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private ByteBuffer active;
+    private ByteBuffer standby;
+    private long lastLsn;
+    private long durableLsn;
+    private volatile boolean running = true;
+    private IOException failure; // sticky: once set the journal accepts nothing more
+
+    private final CRC32 crc = new CRC32(); // used under lock only
+    private FileChannel segment;
+    private long segmentBytes;
+    private final Thread flusher;
+
+    public GridJournal(Path directory, ComponentRegistry registry, long firstLsn) throws IOException {
+        this(directory, registry, firstLsn, 64L << 20, 4 << 20);
+    }
+
+    public GridJournal(Path directory, ComponentRegistry registry, long firstLsn, long segmentSize, int bufferSize)
+            throws IOException {
+        this.directory = directory;
+        this.registry = registry;
+        this.segmentSize = segmentSize;
+        this.active = ByteBuffer.allocateDirect(bufferSize);
+        this.standby = ByteBuffer.allocateDirect(bufferSize);
+        this.lastLsn = firstLsn - 1;
+        this.durableLsn = lastLsn;
+        Files.createDirectories(directory);
+        openSegment(firstLsn);
+        flusher = new Thread(this::flushLoop, "grid-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // ComponentListener side: every event becomes a record
+
+    @Override
+    public void statusChanged(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus) {
+        append(STATUS, registry.keyOf(ec), null, (byte) newStatus.ordinal());
+    }
+
+    @Override
+    public void breakerSwitched(CircuitBreaker cb, boolean open) {
+        append(BREAKER, registry.keyOf(cb), null, (byte) (open ? 1 : 0));
+    }
+
+    @Override
+    public void breakersSwitched(BreakerBank bank, long[] changed, boolean open) {
+        int maxWords = Math.max(1, (active.capacity() / 2 - HEADER_BYTES - 1 - 3 * Integer.BYTES) / Long.BYTES);
+        int w = 0;
+        while (w < changed.length) {
+            while (w < changed.length && changed[w] == 0) {
+                w++;
+            }
+            int end = Math.min(changed.length, w + maxWords);
+            while (end > w && changed[end - 1] == 0) {
+                end--;
+            }
+            if (end > w) {
+                appendBulk(open, changed, w, end - w);
+            }
+            w = end;
+        }
+    }
+
+    @Override
+    public void componentRegistered(String componentID, ElectricalComponent ec) {
+        if (ec instanceof CircuitBreaker) {
+            int slot = ((CircuitBreaker) ec).bankSlot(); // the bank listener runs first, the slot is already given
+            if (slot >= 0) {
+                appendSlot(componentID, slot);
+            }
+        }
+    }
+
+    @Override
+    public void maintenanceCompleted(MantainanceTask task, ElectricalComponent ec) {
+        append(MAINTENANCE, task.getTaskId(), task.getComponentId(), (byte) 0);
+    }
+
+    // returns the lsn given to the record, the record is durable once awaitDurable(lsn) returns
+    private long append(byte type, String first, String second, byte value) {
+        if (first == null) {
+            return -1; // component not registered (anymore), nothing to replay
+        }
+        byte[] firstBytes = first.getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = second == null ? null : second.getBytes(StandardCharsets.UTF_8);
+        int payload = 2 + firstBytes.length + (secondBytes == null ? 1 : 2 + secondBytes.length);
+        lock.lock();
+        try {
+            int start = begin(type, payload);
+            active.putShort((short) firstBytes.length).put(firstBytes);
+            if (secondBytes == null) {
+                active.put(value);
+            }
+            else {
+                active.putShort((short) secondBytes.length).put(secondBytes);
+            }
+            return finish(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long appendSlot(String key, int slot) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            int start = begin(SLOT, 2 + keyBytes.length + Integer.BYTES);
+            active.putShort((short) keyBytes.length).put(keyBytes).putInt(slot);
+            return finish(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long appendBulk(boolean open, long[] mask, int firstWord, int words) {
+        lock.lock();
+        try {
+            int start = begin(BULK, 1 + 2 * Integer.BYTES + words * Long.BYTES);
+            active.put((byte) (open ? 1 : 0)).putInt(firstWord).putInt(words);
+            for (int w = firstWord; w < firstWord + words; w++) {
+                active.putLong(mask[w]);
+            }
+            return finish(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // under lock: waits for room, gives the lsn and writes the header; the caller writes the payload, then finish
+    private int begin(byte type, int payload) {
+        int total = HEADER_BYTES + payload + Integer.BYTES;
+        checkWritable();
+        while (active.remaining() < total) {
+            notEmpty.signal();
+            spaceAvailable.awaitUninterruptibly();
+            checkWritable();
+        }
+        int start = active.position();
+        active.putInt(total - 2 * Integer.BYTES).putLong(++lastLsn).put(type); // length excludes itself and the crc
+        return start;
+    }
+
+    // under lock: checksum of the record begun at start, returns its lsn
+    private long finish(int start) {
+        crc.reset();
+        crc.update(active.duplicate().position(start + Integer.BYTES).limit(active.position()));
+        active.putInt((int) crc.getValue());
+        notEmpty.signal();
+        return lastLsn;
+    }
+
+    // under lock
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("journal write failed, records from lsn " + (durableLsn + 1) + " are lost",
+                    failure);
+        }
+        if (!running) {
+            throw new IllegalStateException("journal closed");
+        }
+    }
+
+    public boolean awaitDurable(long lsn, long timeout, TimeUnit unit) throws InterruptedException, IOException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (durableLsn < lsn) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = durable.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurableLsn() {
+        lock.lock();
+        try {
+            return durableLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchLsn;
+            lock.lock();
+            try {
+                while (active.position() == 0 && running && failure == null) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (active.position() == 0 || failure != null) {
+                    return; // closed and nothing left, or a write failed
+                }
+                batch = active;
+                active = standby;
+                standby = null;
+                batchLsn = lastLsn;
+                spaceAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                batch.flip();
+                if (segmentBytes > 0 && segmentBytes + batch.remaining() > segmentSize) {
+                    segment.force(false);
+                    segment.close();
+                    openSegment(firstLsnOf(batch));
+                }
+                segmentBytes += batch.remaining();
+                while (batch.hasRemaining()) {
+                    segment.write(batch);
+                }
+                segment.force(false); // one fsync for the whole batch
+            } catch (IOException e) {
+                error = e;
+            }
+            batch.clear();
+
+            lock.lock();
+            try {
+                standby = batch;
+                if (error != null) {
+                    failure = error; // durableLsn stays before this batch, waiting producers and callers throw
+                }
+                else {
+                    durableLsn = batchLsn;
+                }
+                durable.signalAll();
+                spaceAvailable.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static long firstLsnOf(ByteBuffer batch) {
+        return batch.getLong(batch.position() + Integer.BYTES);
+    }
+
+    private void openSegment(long firstLsn) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, firstLsn, SUFFIX));
+        // a file with this name can only hold a torn record left by a crash (its lsn was never completed)
+        segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segmentBytes = 0;
+    }
+
+    // flushes what is pending and stops the background thread
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segment.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // called once a snapshot containing every record up to lsn has been written: the segments holding only older
+    // records are not needed by the replay anymore and are deleted. The segment being written is always kept
+    public void retireBefore(long lsn) throws IOException {
+        List<Path> files = segments(directory);
+        for (int i = 0; i + 1 < files.size(); i++) {
+            if (firstLsnOf(files.get(i + 1)) > lsn + 1) {
+                break; // this segment still has records after the snapshot
+            }
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    // replays on the controller every valid record with lsn greater than afterLsn, segment after segment. Reading of
+    // a segment stops at the first record that is incomplete or fails the checksum (tail torn by the crash), the
+    // following segments were started after the recovery, with higher lsn.
+    // Returns the last lsn found in the journal (afterLsn if nothing newer).
+    public static long replay(Path directory, PowerGridController controller, long afterLsn) throws IOException {
+        long last = afterLsn;
+        if (!Files.isDirectory(directory)) {
+            return last;
+        }
+        CRC32 checksum = new CRC32();
+        // bank slots given after the snapshot; the others are the ones the snapshot restored in the controller bank
+        Map<Integer, String> slotKeys = new HashMap<>();
+        List<Path> files = segments(directory);
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (i + 1 < files.size() && firstLsnOf(files.get(i + 1)) <= afterLsn + 1) {
+                continue; // every record of this segment is already in the snapshot, no need to map it
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (in.remaining() >= HEADER_BYTES + Integer.BYTES) {
+                    int start = in.position();
+                    int length = in.getInt();
+                    if (length < HEADER_BYTES - Integer.BYTES || in.remaining() < length + Integer.BYTES) {
+                        break;
+                    }
+                    checksum.reset();
+                    checksum.update(in.duplicate().position(start + Integer.BYTES).limit(start + Integer.BYTES + length));
+                    if ((int) checksum.getValue() != in.getInt(start + Integer.BYTES + length)) {
+                        break;
+                    }
+                    long lsn = in.getLong();
+                    byte type = in.get();
+                    if (type == BULK) {
+                        boolean open = in.get() == 1;
+                        int firstWord = in.getInt();
+                        int words = in.getInt();
+                        for (int w = firstWord; w < firstWord + words; w++) {
+                            long bits = in.getLong();
+                            if (lsn > afterLsn) {
+                                applyBulk(controller, slotKeys, w, bits, open);
+                            }
+                        }
+                    }
+                    else {
+                        String first = getString(in);
+                        if (type == MAINTENANCE) {
+                            String componentId = getString(in);
+                            if (lsn > afterLsn) {
+                                applyMaintenance(controller, first, componentId);
+                            }
+                        }
+                        else if (type == SLOT) {
+                            int slot = in.getInt();
+                            if (lsn > afterLsn) {
+                                slotKeys.put(slot, first);
+                            }
+                        }
+                        else {
+                            byte value = in.get();
+                            if (lsn > afterLsn) {
+                                apply(controller, type, first, value);
+                            }
+                        }
+                    }
+                    in.position(start + Integer.BYTES + length + Integer.BYTES);
+                    last = Math.max(last, lsn);
+                }
+            }
+        }
+        return last;
+    }
+
+    private static void apply(PowerGridController controller, byte type, String key, byte value) {
+        ElectricalComponent ec = controller.getComponentRegistry().get(key);
+        if (ec == null) {
+            return;
+        }
+        if (type == STATUS) {
+            ec.setStatus(PowerComponentStatus.values()[value]);
+        }
+        else if (type == BREAKER && ec instanceof CircuitBreaker) {
+            ((CircuitBreaker) ec).restoreContact(value == 1);
+        }
+    }
+
+    private static void applyBulk(PowerGridController controller, Map<Integer, String> slotKeys, int word,
+                                  long bits, boolean open) {
+        for (; bits != 0; bits &= bits - 1) {
+            int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+            String key = slotKeys.get(slot);
+            ElectricalComponent ec = key != null ? controller.getComponentRegistry().get(key)
+                    : controller.getBreakerBank().breaker(slot);
+            if (ec instanceof CircuitBreaker) {
+                ((CircuitBreaker) ec).restoreContact(open);
+            }
+        }
+    }
+
+    private static void applyMaintenance(PowerGridController controller, String taskId, String componentId) {
+        MantainanceTask task = controller.getMaintainanceQue().get(taskId);
+        if (task != null && componentId.equals(task.getComponentId())) {
+            controller.getMaintainanceQue().remove(task);
+            task.setTaskStatus(TaskStatus.COMPLETED);
+        }
+    }
+
+    // controller restart: latest snapshot + journal records newer than the snapshot, then a new journal is opened
+    // (attached to the controller) continuing the numbering
+    public static PowerGridController recover(Path snapshot, Path journalDirectory) throws IOException {
+        PowerGridController controller = GridSnapshot.load(snapshot);
+        long last = replay(journalDirectory, controller, GridSnapshot.journalLsn(snapshot));
+        controller.attachJournal(new GridJournal(journalDirectory, controller.getComponentRegistry(), last + 1));
+        return controller;
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null); // names carry the first lsn zero padded, so name order is lsn order
+        return files;
+    }
+
+    private static long firstLsnOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
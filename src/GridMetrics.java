@@ -0,0 +1,123 @@
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// latency histograms and counters of the controller operations, shared by the whole process like the TripScheduler.
+// Timers and counters are indexed by enum ordinal, so recording is an array access plus the histogram/adder update,
+// nothing is looked up or allocated on the hot path. snapshot() gives a consistent enough copy for dashboards and logs.
+public class GridMetrics {
+
+    public enum Timer {
+        MONITOR_SWEEP,          // monitorGridStatus, fault isolation included
+        MAINTENANCE_EXECUTION,  // MantainanceTask.executeTask
+        BREAKER_TRIP,           // from the trip request to the contacts open (delay included)
+        BREAKER_OPEN,           // openCircuit itself
+        EMERGENCY_SHUTDOWN,     // handleEmergencyShutDown
+        TELEMETRY_BATCH         // one batch of SCADA readings applied by the TelemetryIngestor
+    }
+
+    public enum Counter {
+        STATUS_CHANGES,
+        FAULTS_DETECTED,
+        TRIPS_SCHEDULED,
+        TRIPS_COMPLETED,
+        TRIPS_CANCELLED,
+        BREAKER_OPENINGS,
+        MAINTENANCE_COMPLETED,
+        EMERGENCY_SHUTDOWNS,
+        TELEMETRY_SAMPLES
+    }
+
+    private static final Timer[] TIMERS = Timer.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final GridMetrics SHARED = new GridMetrics();
+
+    private final LatencyHistogram[] timers = new LatencyHistogram[TIMERS.length];
+    private final LongAdder[] counters = new LongAdder[COUNTERS.length];
+
+    public GridMetrics() {
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public static GridMetrics shared() {
+        return SHARED;
+    }
+
+    public void recordSince(Timer timer, long startNanos) {
+        timers[timer.ordinal()].recordSince(startNanos);
+    }
+
+    public void record(Timer timer, long nanos) {
+        timers[timer.ordinal()].record(nanos);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public Snapshot snapshot() {
+        Map<Timer, LatencyHistogram.Snapshot> timerValues = new EnumMap<>(Timer.class);
+        for (Timer timer : TIMERS) {
+            timerValues.put(timer, timers[timer.ordinal()].snapshot());
+        }
+        Map<Counter, Long> counterValues = new EnumMap<>(Counter.class);
+        for (Counter counter : COUNTERS) {
+            counterValues.put(counter, counters[counter.ordinal()].sum());
+        }
+        return new Snapshot(GridClock.current().currentTimeMillis(), timerValues, counterValues);
+    }
+
+    public void reset() {
+        for (LatencyHistogram timer : timers) {
+            timer.reset();
+        }
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+    }
+
+    public static final class Snapshot {
+        private final long takenAt;
+        private final Map<Timer, LatencyHistogram.Snapshot> timers;
+        private final Map<Counter, Long> counters;
+
+        private Snapshot(long takenAt, Map<Timer, LatencyHistogram.Snapshot> timers, Map<Counter, Long> counters) {
+            this.takenAt = takenAt;
+            this.timers = timers;
+            this.counters = counters;
+        }
+
+        public long getTakenAt() {
+            return takenAt;
+        }
+
+        public LatencyHistogram.Snapshot timer(Timer timer) {
+            return timers.get(timer);
+        }
+
+        public long counter(Counter counter) {
+            return counters.get(counter);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            for (Map.Entry<Timer, LatencyHistogram.Snapshot> entry : timers.entrySet()) {
+                report.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            }
+            for (Map.Entry<Counter, Long> entry : counters.entrySet()) {
+                report.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            }
+            return report.toString();
+        }
+    }
+}
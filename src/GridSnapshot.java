@@ -0,0 +1,383 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+// compact binary image of the whole grid: registry (in insertion order), parameters and status of every component,
+// maintenance history, pending maintenance queue, maintenance calendar and the references between components (as
+// indexes). It is written through a FileChannel in big blocks and read back through a memory mapped buffer, so
+// restarting a production sized grid does not mean building and wiring every object by hand like Main does. The
+// image goes to a temporary file next to the target, forced to disk and renamed over it, so a crash while writing
+// leaves the previous snapshot (and the journal segments it still needs) untouched.
+//
+// layout: header | components | queue | calendar
+//   header     MAGIC, VERSION, journal lsn (last journal record already contained in the snapshot), component
+//              count, task count, calendar task count, index of genRef, transfRef, CBRef (-1 = none)
+//   component  kind, registered flag, registry key, componentId, type, status, installation and last maintenance
+//              (epoch day, NO_DATE if missing), reference (cb for generators, generator for transformers, transformer
+//              for breakers), BreakerBank slot (-1 = none), parameters (written by the component), history length +
+//              epoch days
+//   task       taskId, componentId, type, priority, scheduled date, status, in the order they would be polled
+//   calendar   task as above + component type of its bucket, for the tasks scheduled but not due yet, by day
+public class GridSnapshot {
+    private static final int MAGIC = 0x47524944; // "GRID"
+    private static final int VERSION = 5;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final byte GENERATOR = 1;
+    private static final byte TRANSFORMER = 2;
+    private static final byte BREAKER = 3;
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    public static void write(PowerGridController controller, Path file) throws IOException {
+        // every component reachable from the controller gets an index: registry first (keeps its order), then the
+        // ones only referenced by other components
+        Map<ElectricalComponent, Integer> indexes = new IdentityHashMap<>();
+        List<ElectricalComponent> components = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, ElectricalComponent> entry : controller.getComponentRegistry().entrySet()) {
+            indexes.put(entry.getValue(), components.size());
+            components.add(entry.getValue());
+            keys.add(entry.getKey());
+        }
+        int registered = components.size();
+        for (int i = 0; i < components.size(); i++) {
+            collect(reference(components.get(i)), indexes, components);
+        }
+        collect(controller.genRef, indexes, components);
+        collect(controller.transfRef, indexes, components);
+        collect(controller.CBRef, indexes, components);
+        // referenced ones may reference others in turn
+        for (int i = registered; i < components.size(); i++) {
+            collect(reference(components.get(i)), indexes, components);
+        }
+
+        // taken before reading the state: records up to this lsn are already applied, the newer ones are replayed on
+        // top of the snapshot, and applying a status or a contact position twice does no harm
+        GridJournal journal = controller.getJournal();
+        long journalLsn = journal == null ? 0 : journal.getLastLsn();
+        List<MantainanceTask> tasks = controller.getMaintainanceQue().toSortedList();
+        List<ComponentType> calendarTypes = new ArrayList<>();
+        List<MantainanceTask> calendarTasks = controller.getMaintenanceCalendar().scheduledTasks(calendarTypes);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BlockWriter out = new BlockWriter(channel);
+            out.ensure(8 * Integer.BYTES + Long.BYTES);
+            out.buffer.putInt(MAGIC).putInt(VERSION).putLong(journalLsn).putInt(components.size()).putInt(tasks.size());
+            out.buffer.putInt(calendarTasks.size());
+            out.buffer.putInt(indexOf(controller.genRef, indexes));
+            out.buffer.putInt(indexOf(controller.transfRef, indexes));
+            out.buffer.putInt(indexOf(controller.CBRef, indexes));
+
+            for (int i = 0; i < components.size(); i++) {
+                ElectricalComponent ec = components.get(i);
+                int[] history = ec.maintenanceHistory().epochDays();
+                out.ensure(2);
+                out.buffer.put(kindOf(ec)).put((byte) (i < registered ? 1 : 0));
+                out.putString(i < registered ? keys.get(i) : "");
+                out.putString(ec.componentId);
+                out.ensure(2 * Integer.BYTES + 2 * Long.BYTES + 2 * Integer.BYTES + parametersSize(ec) + Integer.BYTES);
+                out.buffer.putInt(ec.componentType.ordinal()).putInt(ec.getStatus().ordinal());
+                out.buffer.putLong(epochDay(ec.getInstallationDate())).putLong(epochDay(ec.getLastMaintenanceDate()));
+                out.buffer.putInt(indexOf(reference(ec), indexes));
+                out.buffer.putInt(bankSlotOf(ec, controller.getBreakerBank()));
+                ec.writeParameters(out.buffer);
+                out.buffer.putInt(history.length);
+                for (int day : history) {
+                    out.ensure(Integer.BYTES);
+                    out.buffer.putInt(day);
+                }
+            }
+
+            for (MantainanceTask task : tasks) {
+                writeTask(out, task);
+            }
+            for (int i = 0; i < calendarTasks.size(); i++) {
+                writeTask(out, calendarTasks.get(i));
+                out.ensure(Integer.BYTES);
+                out.buffer.putInt(calendarTypes.get(i).ordinal());
+            }
+            out.flush();
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // only once the new snapshot is in place
+        if (journal != null) {
+            journal.retireBefore(journalLsn);
+        }
+    }
+
+    public static PowerGridController load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            checkHeader(in, file);
+            in.getLong(); // journal lsn, see journalLsn()
+            int componentCount = in.getInt();
+            int taskCount = in.getInt();
+            int calendarCount = in.getInt();
+            int genRef = in.getInt();
+            int transfRef = in.getInt();
+            int cbRef = in.getInt();
+
+            // 1st pass: read everything, but the objects can only be built once the references are known, because
+            // a Transformer needs its generator in the constructor
+            ComponentRecord[] records = new ComponentRecord[componentCount];
+            for (int i = 0; i < componentCount; i++) {
+                ComponentRecord record = new ComponentRecord();
+                record.kind = in.get();
+                record.registered = in.get() == 1;
+                record.key = getString(in);
+                record.componentId = getString(in);
+                record.type = ComponentType.values()[in.getInt()];
+                record.status = PowerComponentStatus.values()[in.getInt()];
+                record.installationDate = date(in.getLong());
+                record.lastMaintenanceDate = date(in.getLong());
+                record.reference = in.getInt();
+                record.bankSlot = in.getInt();
+                record.parametersOffset = in.position();
+                in.position(in.position() + parametersSize(record.kind));
+                record.history = new int[in.getInt()];
+                in.asIntBuffer().get(record.history);
+                in.position(in.position() + record.history.length * Integer.BYTES);
+                records[i] = record;
+            }
+            int queueOffset = in.position();
+
+            // 2nd pass: generators, then transformers (need the generator), then breakers (need the transformer)
+            ElectricalComponent[] components = new ElectricalComponent[componentCount];
+            for (byte kind = GENERATOR; kind <= BREAKER; kind++) {
+                for (int i = 0; i < componentCount; i++) {
+                    ComponentRecord r = records[i];
+                    if (r.kind != kind) {
+                        continue;
+                    }
+                    if (kind == GENERATOR) {
+                        components[i] = new PowerGenerator(r.componentId, r.type, r.status, r.installationDate,
+                                r.lastMaintenanceDate, null, null);
+                    }
+                    else if (kind == TRANSFORMER) {
+                        components[i] = new Transformer((PowerGenerator) components[r.reference], r.componentId,
+                                r.type, r.status, r.installationDate, r.lastMaintenanceDate, null);
+                    }
+                    else {
+                        CircuitBreaker cb = new CircuitBreaker(r.componentId, r.type, r.status, r.installationDate,
+                                r.lastMaintenanceDate, r.reference < 0 ? null : (Transformer) components[r.reference]);
+                        cb.restoredSlot = r.bankSlot; // same slot at registration: the journal masks refer to it
+                        components[i] = cb;
+                    }
+                    components[i].readParameters(in.position(r.parametersOffset));
+                    components[i].maintenanceHistory().load(r.history);
+                }
+            }
+
+            PowerGridController controller = new PowerGridController(
+                    genRef < 0 ? null : (PowerGenerator) components[genRef],
+                    transfRef < 0 ? null : (Transformer) components[transfRef],
+                    cbRef < 0 ? null : (CircuitBreaker) components[cbRef]);
+            // same wiring Main does with the setters
+            for (int i = 0; i < componentCount; i++) {
+                ElectricalComponent ec = components[i];
+                if (ec instanceof PowerGenerator) {
+                    PowerGenerator gen = (PowerGenerator) ec;
+                    gen.setController(controller);
+                    if (records[i].reference >= 0) {
+                        gen.setCb((CircuitBreaker) components[records[i].reference]);
+                    }
+                }
+                else if (ec instanceof Transformer) {
+                    ((Transformer) ec).setController(controller);
+                }
+            }
+            for (int i = 0; i < componentCount; i++) {
+                if (records[i].registered) {
+                    controller.registerComponent(records[i].key, components[i]);
+                }
+            }
+
+            in.position(queueOffset); // readParameters moved the position around
+            for (int i = 0; i < taskCount; i++) {
+                controller.getMaintainanceQue().offer(readTask(in, controller));
+            }
+            for (int i = 0; i < calendarCount; i++) {
+                MantainanceTask task = readTask(in, controller);
+                controller.getMaintenanceCalendar().add(task, ComponentType.values()[in.getInt()]);
+            }
+            return controller;
+        }
+    }
+
+    private static void writeTask(BlockWriter out, MantainanceTask task) throws IOException {
+        out.putString(task.getTaskId());
+        out.putString(task.getComponentId());
+        out.ensure(2 * Integer.BYTES + Long.BYTES + Integer.BYTES);
+        out.buffer.putInt(task.getTaskType().ordinal()).putInt(task.getPriority());
+        out.buffer.putLong(epochDay(task.getScheduledDate()));
+        out.buffer.putInt(task.getTaskStatus() == null ? -1 : task.getTaskStatus().ordinal());
+    }
+
+    private static MantainanceTask readTask(ByteBuffer in, PowerGridController controller) {
+        String taskId = getString(in);
+        String componentId = getString(in);
+        MantainanceTask task = new MantainanceTask(taskId, componentId, TaskType.values()[in.getInt()], controller);
+        int priority = in.getInt();
+        LocalDate scheduledDate = date(in.getLong());
+        int status = in.getInt();
+        task.restore(priority, scheduledDate, status < 0 ? null : TaskStatus.values()[status]);
+        return task;
+    }
+
+    // last journal record contained in the snapshot, the replay starts after it
+    public static long journalLsn(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + Long.BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            checkHeader(header, file);
+            return header.getLong();
+        }
+    }
+
+    private static void checkHeader(ByteBuffer in, Path file) throws IOException {
+        if (in.remaining() < 2 * Integer.BYTES + Long.BYTES || in.getInt() != MAGIC) {
+            throw new IOException("not a grid snapshot: " + file);
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+    }
+
+    private static final class ComponentRecord {
+        byte kind;
+        boolean registered;
+        String key;
+        String componentId;
+        ComponentType type;
+        PowerComponentStatus status;
+        LocalDate installationDate;
+        LocalDate lastMaintenanceDate;
+        int reference;
+        int bankSlot;
+        int parametersOffset;
+        int[] history;
+    }
+
+    // buffered writer: the records are put in a 1 MB direct buffer which goes to the channel when full
+    private static final class BlockWriter {
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+        BlockWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(Integer.BYTES + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static void collect(ElectricalComponent ec, Map<ElectricalComponent, Integer> indexes,
+                                List<ElectricalComponent> components) {
+        if (ec != null && !indexes.containsKey(ec)) {
+            indexes.put(ec, components.size());
+            components.add(ec);
+        }
+    }
+
+    private static ElectricalComponent reference(ElectricalComponent ec) {
+        if (ec instanceof PowerGenerator) {
+            return ((PowerGenerator) ec).cb;
+        }
+        if (ec instanceof Transformer) {
+            return ((Transformer) ec).getPowerGenerator();
+        }
+        if (ec instanceof CircuitBreaker) {
+            return ((CircuitBreaker) ec).transformer;
+        }
+        return null;
+    }
+
+    private static int bankSlotOf(ElectricalComponent ec, BreakerBank bank) {
+        if (ec instanceof CircuitBreaker && ((CircuitBreaker) ec).bank() == bank) {
+            return ((CircuitBreaker) ec).bankSlot();
+        }
+        return -1;
+    }
+
+    private static byte kindOf(ElectricalComponent ec) throws IOException {
+        if (ec instanceof PowerGenerator) {
+            return GENERATOR;
+        }
+        if (ec instanceof Transformer) {
+            if (((Transformer) ec).getPowerGenerator() == null) {
+                throw new IOException("transformer " + ec.componentId + " is not connected to a generator");
+            }
+            return TRANSFORMER;
+        }
+        if (ec instanceof CircuitBreaker) {
+            return BREAKER;
+        }
+        throw new IOException("unsupported component " + ec.getClass().getName());
+    }
+
+    private static int parametersSize(ElectricalComponent ec) throws IOException {
+        return parametersSize(kindOf(ec));
+    }
+
+    private static int parametersSize(byte kind) {
+        switch (kind) {
+            case GENERATOR:
+                return PowerGenerator.SNAPSHOT_BYTES;
+            case TRANSFORMER:
+                return Transformer.SNAPSHOT_BYTES;
+            default:
+                return CircuitBreaker.SNAPSHOT_BYTES;
+        }
+    }
+
+    private static int indexOf(ElectricalComponent ec, Map<ElectricalComponent, Integer> indexes) {
+        return ec == null ? -1 : indexes.get(ec);
+    }
+
+    private static long epochDay(LocalDate date) {
+        return date == null ? NO_DATE : date.toEpochDay();
+    }
+
+    private static LocalDate date(long epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
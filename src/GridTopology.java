@@ -0,0 +1,168 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+// explicit graph of the connections that so far were only in the fields of the components: generator -> its breaker
+// (PowerGenerator.cb), generator -> transformers fed by it (Transformer.powerGenerator), transformer -> breakers
+// protecting it (CircuitBreaker.transformer). Edges are stored in compressed rows (offsets + targets int arrays),
+// nodes are numbered in registry order.
+// A fault is isolated walking only the subtree downstream of the broken generators, components fed by healthy
+// generators are never touched and the cost follows the size of the subtree, not of the grid.
+// The graph is immutable: when the wiring changes the controller builds a new one.
+public class GridTopology {
+    private final ElectricalComponent[] nodes;
+    // position of each node, kept by this topology only: a component indexed by a newer topology is still found
+    // (or not) correctly by an older one
+    private final IdentityHashMap<ElectricalComponent, Integer> positions;
+    private final int[] offsets; // edges of node i are targets[offsets[i] .. offsets[i + 1])
+    private final int[] targets;
+
+    // reused by every traversal (under the topology lock), a node is visited when its mark equals the current stamp
+    private final int[] marks;
+    private final int[] queue;
+    private int stamp;
+
+    private GridTopology(ElectricalComponent[] nodes, IdentityHashMap<ElectricalComponent, Integer> positions,
+                         int[] offsets, int[] targets) {
+        this.nodes = nodes;
+        this.positions = positions;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.marks = new int[nodes.length];
+        this.queue = new int[nodes.length];
+    }
+
+    public static GridTopology build(ComponentRegistry registry) {
+        ElectricalComponent[] nodes = registry.values().toArray(new ElectricalComponent[0]);
+        IdentityHashMap<ElectricalComponent, Integer> positions = new IdentityHashMap<>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            positions.put(nodes[i], i);
+        }
+        // first pass counts the out degree of each node, second pass fills the rows
+        int[] offsets = new int[nodes.length + 1];
+        for (ElectricalComponent ec : nodes) {
+            int upstream = upstreamOf(ec, positions);
+            if (upstream >= 0) {
+                offsets[upstream + 1]++;
+            }
+            int breaker = generatorBreakerOf(ec, positions);
+            if (breaker >= 0) {
+                offsets[positions.get(ec) + 1]++;
+            }
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] targets = new int[offsets[nodes.length]];
+        int[] fill = Arrays.copyOf(offsets, nodes.length);
+        for (ElectricalComponent ec : nodes) {
+            int breaker = generatorBreakerOf(ec, positions);
+            if (breaker >= 0) {
+                targets[fill[positions.get(ec)]++] = breaker;
+            }
+        }
+        for (ElectricalComponent ec : nodes) {
+            int upstream = upstreamOf(ec, positions);
+            if (upstream >= 0) {
+                targets[fill[upstream]++] = positions.get(ec);
+            }
+        }
+        return new GridTopology(nodes, positions, offsets, targets);
+    }
+
+    // index of the component feeding ec, -1 if none (or not in this grid)
+    private static int upstreamOf(ElectricalComponent ec, IdentityHashMap<ElectricalComponent, Integer> positions) {
+        if (ec instanceof Transformer) {
+            return indexIn(((Transformer) ec).getPowerGenerator(), positions);
+        }
+        if (ec instanceof CircuitBreaker) {
+            return indexIn(((CircuitBreaker) ec).transformer, positions);
+        }
+        return -1;
+    }
+
+    private static int generatorBreakerOf(ElectricalComponent ec,
+                                          IdentityHashMap<ElectricalComponent, Integer> positions) {
+        if (!(ec instanceof PowerGenerator)) {
+            return -1;
+        }
+        // the same breaker may also be reached through a transformer, the traversal visits it once anyway
+        return indexIn(((PowerGenerator) ec).cb, positions);
+    }
+
+    private static int indexIn(ElectricalComponent ec, IdentityHashMap<ElectricalComponent, Integer> positions) {
+        Integer index = ec == null ? null : positions.get(ec);
+        return index == null ? -1 : index;
+    }
+
+    public int indexOf(ElectricalComponent ec) {
+        return indexIn(ec, positions);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public ElectricalComponent node(int index) {
+        return nodes[index];
+    }
+
+    // components directly fed by the given one
+    public List<ElectricalComponent> downstreamOf(ElectricalComponent ec) {
+        List<ElectricalComponent> result = new ArrayList<>();
+        int index = indexOf(ec);
+        if (index >= 0) {
+            for (int e = offsets[index]; e < offsets[index + 1]; e++) {
+                result.add(nodes[targets[e]]);
+            }
+        }
+        return result;
+    }
+
+    // breadth first walk from the given sources (sources excluded): transformers go OFFLINE, breakers are opened.
+    // Subtrees shared by more sources are walked once. Returns how many components were isolated
+    public synchronized int isolateDownstream(ElectricalComponent[] sources, int count) {
+        if (++stamp == 0) { // wrapped after 4 billion traversals, old marks could look current
+            Arrays.fill(marks, 0);
+            stamp = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < count; i++) {
+            int index = indexOf(sources[i]);
+            if (index >= 0 && marks[index] != stamp) {
+                marks[index] = stamp;
+                queue[tail++] = index;
+            }
+        }
+        int isolated = 0;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                int next = targets[e];
+                if (marks[next] == stamp) {
+                    continue;
+                }
+                marks[next] = stamp;
+                queue[tail++] = next;
+                isolate(nodes[next]);
+                isolated++;
+            }
+        }
+        return isolated;
+    }
+
+    private static void isolate(ElectricalComponent ec) {
+        if (ec instanceof CircuitBreaker) {
+            ((CircuitBreaker) ec).openCircuit();
+        }
+        else {
+            ec.setStatus(PowerComponentStatus.OFFLINE);
+        }
+    }
+}
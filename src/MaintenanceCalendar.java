@@ -0,0 +1,116 @@
+import java.time.LocalDate;
+import java.util.*;
+
+// calendar queue of the scheduled maintenance: every task is filed in the bucket of the day it has been scheduled
+// for (epoch day), each bucket is split by component type. "Due today" is one hash lookup, "next N days for the
+// transformers" touches only N buckets, and the daily roll forward releases only the buckets already due (a min-heap
+// of the non empty days tells which ones) without looking at the future ones.
+public class MaintenanceCalendar {
+
+    private static final class DayBucket {
+        final Map<ComponentType, List<MantainanceTask>> byType = new EnumMap<>(ComponentType.class);
+        int size;
+
+        void add(ComponentType type, MantainanceTask task) {
+            byType.computeIfAbsent(type, k -> new ArrayList<>()).add(task);
+            size++;
+        }
+    }
+
+    private final Map<Long, DayBucket> buckets = new HashMap<>();
+    private final PriorityQueue<Long> pendingDays = new PriorityQueue<>(); // days having a bucket, earliest first
+    private int size;
+
+    // tasks not scheduled yet are considered due today
+    public synchronized void add(MantainanceTask task, ComponentType type) {
+        LocalDate date = task.getScheduledDate() != null ? task.getScheduledDate() : GridClock.current().today();
+        long day = date.toEpochDay();
+        DayBucket bucket = buckets.get(day);
+        if (bucket == null) {
+            bucket = new DayBucket();
+            buckets.put(day, bucket);
+            pendingDays.add(day);
+        }
+        bucket.add(type, task);
+        size++;
+    }
+
+    public List<MantainanceTask> dueToday() {
+        return dueOn(GridClock.current().today());
+    }
+
+    public synchronized List<MantainanceTask> dueOn(LocalDate date) {
+        DayBucket bucket = buckets.get(date.toEpochDay());
+        List<MantainanceTask> result = new ArrayList<>();
+        if (bucket != null) {
+            for (List<MantainanceTask> tasks : bucket.byType.values()) {
+                collectPending(tasks, result);
+            }
+        }
+        return result;
+    }
+
+    // tasks for the given component type from "from" (included) for the next "days" days
+    public synchronized List<MantainanceTask> dueBetween(LocalDate from, int days, ComponentType type) {
+        List<MantainanceTask> result = new ArrayList<>();
+        long first = from.toEpochDay();
+        for (long day = first; day < first + days; day++) {
+            DayBucket bucket = buckets.get(day);
+            if (bucket != null) {
+                collectPending(bucket.byType.getOrDefault(type, Collections.emptyList()), result);
+            }
+        }
+        return result;
+    }
+
+    // daily roll forward: moves every task due up to "today" (overdue ones included) into the execution queue
+    // and drops their buckets. Returns how many tasks have been released
+    public synchronized int rollForward(LocalDate today, Queue<MantainanceTask> executionQueue) {
+        long lastDay = today.toEpochDay();
+        int released = 0;
+        while (!pendingDays.isEmpty() && pendingDays.peek() <= lastDay) {
+            DayBucket bucket = buckets.remove(pendingDays.poll());
+            size -= bucket.size;
+            for (List<MantainanceTask> tasks : bucket.byType.values()) {
+                for (MantainanceTask task : tasks) {
+                    if (task.getTaskStatus() != TaskStatus.CANCELLED && executionQueue.offer(task)) {
+                        released++;
+                    }
+                }
+            }
+        }
+        return released;
+    }
+
+    // every task still waiting in the calendar (cancelled ones skipped), earliest day first, with the component type
+    // of the bucket it is filed in at the same position of types. Used by GridSnapshot
+    public synchronized List<MantainanceTask> scheduledTasks(List<ComponentType> types) {
+        Long[] days = pendingDays.toArray(new Long[0]);
+        Arrays.sort(days);
+        List<MantainanceTask> result = new ArrayList<>();
+        for (Long day : days) {
+            for (Map.Entry<ComponentType, List<MantainanceTask>> entry : buckets.get(day).byType.entrySet()) {
+                for (MantainanceTask task : entry.getValue()) {
+                    if (task.getTaskStatus() != TaskStatus.CANCELLED) {
+                        result.add(task);
+                        types.add(entry.getKey());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // cancelled tasks stay in their bucket until it is released, they are only skipped
+    private static void collectPending(List<MantainanceTask> tasks, List<MantainanceTask> result) {
+        for (MantainanceTask task : tasks) {
+            if (task.getTaskStatus() != TaskStatus.CANCELLED) {
+                result.add(task);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// concurrent processing of maintenance tasks. Workers take from a MaintenanceTaskHeap (EMERGENCY first, then by
+// date, FIFO between equal tasks), so an escalation made while the task waits is seen by the workers at once.
+// Before running a task the worker reserves its component: if another worker is already busy on that component,
+// the task is parked and put back in the queue when the component is released, so two tasks of the same component
+// never overlap and no worker stays blocked waiting for a component. Waiting tasks, queued or parked, can still be
+// escalated or cancelled (a task a worker has already taken counts as started); failures go to the GridEventLog.
+public class MaintenanceExecutor {
+
+    private final PowerGridController controller;
+    private final MaintenanceTaskHeap queue = new MaintenanceTaskHeap(task -> taskDone()); // cancelled = done
+    private final ExecutorService workers;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // guarded by busyComponents
+    private final Set<String> busyComponents = new HashSet<>();
+    private final Map<String, MaintenanceTaskHeap> parked = new HashMap<>();
+
+    public MaintenanceExecutor(PowerGridController controller, int workerCount) {
+        this.controller = controller;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread t = new Thread(r, "maintenance-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::workLoop);
+        }
+    }
+
+    public boolean submit(MantainanceTask task) {
+        outstanding.incrementAndGet();
+        if (!queue.offer(task)) { // same taskId already waiting
+            taskDone();
+            return false;
+        }
+        return true;
+    }
+
+    private void workLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                MantainanceTask next = queue.take();
+                String componentId = next.getComponentId();
+                synchronized (busyComponents) {
+                    if (!busyComponents.add(componentId)) {
+                        // a task with the same id may already be parked there: dropped like in release
+                        if (!parked.computeIfAbsent(componentId, k -> new MaintenanceTaskHeap(task -> taskDone()))
+                                .offer(next)) {
+                            GridEventLog.shared().taskDropped(controller.getComponentRegistry().get(componentId),
+                                    next.getTaskId());
+                            taskDone();
+                        }
+                        continue;
+                    }
+                }
+                try {
+                    controller.performQueuedTask(next);
+                } catch (RuntimeException e) {
+                    GridEventLog.shared().taskFailed(controller.getComponentRegistry().get(componentId),
+                            next.getTaskId(), e);
+                } finally {
+                    release(componentId);
+                    taskDone();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void release(String componentId) {
+        synchronized (busyComponents) {
+            busyComponents.remove(componentId);
+            MaintenanceTaskHeap waiting = parked.get(componentId);
+            if (waiting != null) {
+                MantainanceTask next = waiting.poll();
+                // back in the shared queue, so it still competes by priority. Refused if a task with the same id was
+                // submitted meanwhile: dropped like a refused submit, and counted as done
+                if (next != null && !queue.offer(next)) {
+                    GridEventLog.shared().taskDropped(controller.getComponentRegistry().get(componentId),
+                            next.getTaskId());
+                    taskDone();
+                }
+                if (waiting.isEmpty()) {
+                    parked.remove(componentId);
+                }
+            }
+        }
+    }
+
+    // the task wherever it waits, in the shared queue or parked behind its component
+    public boolean changePriority(String taskId, int priority) {
+        synchronized (busyComponents) {
+            if (queue.changePriority(taskId, priority)) {
+                return true;
+            }
+            for (MaintenanceTaskHeap waiting : parked.values()) {
+                if (waiting.changePriority(taskId, priority)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // the heaps tell taskDone about it
+    public boolean cancel(String taskId) {
+        synchronized (busyComponents) {
+            if (queue.cancel(taskId)) {
+                return true;
+            }
+            for (MaintenanceTaskHeap waiting : parked.values()) {
+                if (waiting.cancel(taskId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private void taskDone() {
+        if (outstanding.decrementAndGet() == 0) {
+            synchronized (outstanding) {
+                outstanding.notifyAll();
+            }
+        }
+    }
+
+    // waits until every submitted task has been executed
+    public void awaitCompletion() throws InterruptedException {
+        synchronized (outstanding) {
+            while (outstanding.get() > 0) {
+                outstanding.wait();
+            }
+        }
+    }
+
+    public int getOutstandingTasks() {
+        return outstanding.get();
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,267 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+// binary heap of maintenance tasks with an index taskId -> position in the array. With the index the heap can find
+// a task in O(1) and move it up or down in O(log n) when its priority changes, or take it out when it is cancelled;
+// a PriorityQueue instead never notices a priority changed and needs a linear search to remove a task.
+// Order: priority (comparatorByPriority), then scheduled date (tasks without a date go last), then insertion order.
+// All the methods are synchronized, take() waits for a task so the heap can be used by the maintenance workers too.
+public class MaintenanceTaskHeap extends AbstractQueue<MantainanceTask> {
+    private final Comparator<MantainanceTask> byPriority = new comparatorByPriority();
+    private MantainanceTask[] heap = new MantainanceTask[16];
+    private long[] seqs = new long[16];
+    private final Map<String, Integer> positions = new HashMap<>();
+    private int size;
+    private long nextSeq;
+    private final Consumer<MantainanceTask> cancelListener;
+
+    public MaintenanceTaskHeap() {
+        this(task -> { });
+    }
+
+    // the listener is told about every task cancelled while inside this heap
+    public MaintenanceTaskHeap(Consumer<MantainanceTask> cancelListener) {
+        this.cancelListener = cancelListener;
+    }
+
+    @Override
+    public synchronized boolean offer(MantainanceTask task) {
+        if (positions.containsKey(task.getTaskId())) {
+            return false; // taskId is the key of the index, it must be unique
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            seqs = Arrays.copyOf(seqs, size * 2);
+        }
+        heap[size] = task;
+        seqs[size] = nextSeq++;
+        positions.put(task.getTaskId(), size);
+        task.owner = this;
+        siftUp(size++);
+        notifyAll();
+        return true;
+    }
+
+    // AbstractQueue.add would report a refused duplicate as "Queue full"
+    @Override
+    public boolean add(MantainanceTask task) {
+        if (!offer(task)) {
+            throw new IllegalArgumentException("task " + task.getTaskId() + " is already queued");
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized MantainanceTask poll() {
+        if (size == 0) {
+            return null;
+        }
+        return removeAt(0);
+    }
+
+    public synchronized MantainanceTask take() throws InterruptedException {
+        while (size == 0) {
+            wait();
+        }
+        return removeAt(0);
+    }
+
+    @Override
+    public synchronized MantainanceTask peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    public synchronized MantainanceTask get(String taskId) {
+        Integer position = positions.get(taskId);
+        return position == null ? null : heap[position];
+    }
+
+    // escalation (or de-escalation) takes effect at once: the task is moved to its new place in the heap
+    public synchronized boolean changePriority(String taskId, int priority) {
+        Integer position = positions.get(taskId);
+        if (position == null) {
+            return false;
+        }
+        MantainanceTask task = heap[position];
+        int oldPriority = task.getPriority();
+        task.setPriorityField(priority);
+        if (priority < oldPriority) {
+            siftUp(position);
+        }
+        else {
+            siftDown(position);
+        }
+        return true;
+    }
+
+    // to be called when a field used by the ordering changed outside changePriority (e.g. the scheduled date)
+    public synchronized boolean reposition(String taskId) {
+        Integer position = positions.get(taskId);
+        if (position == null) {
+            return false;
+        }
+        MantainanceTask task = heap[position];
+        siftUp(position);
+        if (heap[position] == task) {
+            siftDown(position);
+        }
+        return true;
+    }
+
+    // takes the task out of the heap and marks it CANCELLED
+    public synchronized boolean cancel(String taskId) {
+        Integer position = positions.get(taskId);
+        if (position == null) {
+            return false;
+        }
+        MantainanceTask task = removeAt(position);
+        task.setTaskStatus(TaskStatus.CANCELLED);
+        cancelListener.accept(task);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        if (!(o instanceof MantainanceTask)) {
+            return false;
+        }
+        Integer position = positions.get(((MantainanceTask) o).getTaskId());
+        if (position == null || heap[position] != o) {
+            return false;
+        }
+        removeAt(position);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean contains(Object o) {
+        if (!(o instanceof MantainanceTask)) {
+            return false;
+        }
+        Integer position = positions.get(((MantainanceTask) o).getTaskId());
+        return position != null && heap[position] == o;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            heap[i].owner = null;
+            heap[i] = null;
+        }
+        positions.clear();
+        size = 0;
+    }
+
+    // copy of the waiting tasks sorted in the order they would be polled
+    public synchronized List<MantainanceTask> toSortedList() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, this::compare);
+        List<MantainanceTask> sorted = new ArrayList<>(size);
+        for (Integer position : order) {
+            sorted.add(heap[position]);
+        }
+        return sorted;
+    }
+
+    // iterates over a copy, in heap order (not sorted), like PriorityQueue does
+    @Override
+    public synchronized Iterator<MantainanceTask> iterator() {
+        return Arrays.asList(Arrays.copyOf(heap, size)).iterator();
+    }
+
+    private MantainanceTask removeAt(int position) {
+        MantainanceTask removed = heap[position];
+        positions.remove(removed.getTaskId());
+        removed.owner = null;
+        int last = --size;
+        if (position != last) {
+            MantainanceTask moved = heap[last];
+            move(last, position);
+            heap[last] = null;
+            siftDown(position);
+            if (heap[position] == moved) { // did not go down, it may have to go up
+                siftUp(position);
+            }
+        }
+        else {
+            heap[last] = null;
+        }
+        return removed;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (compare(position, parent) >= 0) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && compare(child + 1, child) < 0) {
+                child++;
+            }
+            if (compare(child, position) >= 0) {
+                break;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    private int compare(int i, int j) {
+        int result = byPriority.compare(heap[i], heap[j]);
+        if (result != 0) {
+            return result;
+        }
+        LocalDate dateI = heap[i].getScheduledDate();
+        LocalDate dateJ = heap[j].getScheduledDate();
+        if (dateI != null || dateJ != null) {
+            if (dateI == null) {
+                return 1;
+            }
+            if (dateJ == null) {
+                return -1;
+            }
+            result = dateI.compareTo(dateJ);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Long.compare(seqs[i], seqs[j]);
+    }
+
+    private void swap(int i, int j) {
+        MantainanceTask task = heap[i];
+        long seq = seqs[i];
+        heap[i] = heap[j];
+        seqs[i] = seqs[j];
+        heap[j] = task;
+        seqs[j] = seq;
+        positions.put(heap[i].getTaskId(), i);
+        positions.put(heap[j].getTaskId(), j);
+    }
+
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        seqs[to] = seqs[from];
+        positions.put(heap[to].getTaskId(), to);
+    }
+}
@@ -10,6 +10,7 @@ public class MantainanceTask {
     private LocalDate scheduledDate;
     private TaskStatus taskStatus;
     private PowerGridController pgc;
+    volatile MaintenanceTaskHeap owner; // heap holding the task while it waits, null once taken out
 
 
     public MantainanceTask(String taskId, String componentId, TaskType taskType, PowerGridController pgc){
@@ -18,16 +19,49 @@ public class MantainanceTask {
         this.componentId = componentId;
         this.taskType = taskType;
         this.pgc = pgc;
+        this.priority = priorityOf(taskType); // so that the queue orders the task even before it is scheduled
+        this.taskStatus = TaskStatus.PENDING;
 
     }
 
+    // 1 is the most urgent, same values used by scheduleMantainanceTask
+    public static int priorityOf(TaskType taskType){
+        switch (taskType){
+            case EMERGENCY:
+                return 1;
+            case CORRECTIVE:
+                return 2;
+            case PREVENTIVE:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
 
 
     public void updatePriority(int priority){
+        MaintenanceTaskHeap owner = this.owner;
+        if (owner == null || !owner.changePriority(taskId, priority)){ // while queued the heap must reorder it
+            this.priority = priority;
+        }
+    }
+
+    void setPriorityField(int priority){
         this.priority = priority;
     }
 
+    public void cancel(){
+        MaintenanceTaskHeap owner = this.owner;
+        if (owner == null || !owner.cancel(taskId)){
+            this.taskStatus = TaskStatus.CANCELLED;
+        }
+    }
+
     public TaskStatus executeTask(ElectricalComponent ec){
+        long start = System.nanoTime();
+        GridEvents.Maintenance event = new GridEvents.Maintenance();
+        event.begin();
 
         if (ec instanceof PowerGenerator){
             ec.performMantainance(taskType);
@@ -42,8 +76,18 @@ public class MantainanceTask {
             pgc.CBRef.openCircuit();
             ec.performMantainance(taskType);
         }
-        return this.taskStatus = (TaskStatus.COMPLETED);
-
+        this.taskStatus = TaskStatus.COMPLETED;
+        GridMetrics metrics = GridMetrics.shared();
+        metrics.increment(GridMetrics.Counter.MAINTENANCE_COMPLETED);
+        metrics.recordSince(GridMetrics.Timer.MAINTENANCE_EXECUTION, start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.taskId = taskId;
+            event.componentId = componentId;
+            event.taskType = String.valueOf(taskType);
+            event.commit();
+        }
+        return taskStatus;
 
     }
 
@@ -63,7 +107,7 @@ public class MantainanceTask {
 
         else if (taskType == TaskType.EMERGENCY){
             this.priority = 1;
-            scheduledDate = LocalDate.now();
+            scheduledDate = GridClock.current().today();
             ec.setLastMaintenanceDate(scheduledDate);
             ec.addDateToMantainanceHist(scheduledDate);
         }
@@ -86,6 +130,10 @@ public class MantainanceTask {
             ec.addDateToMantainanceHist(scheduledDate);
 
         }
+        MaintenanceTaskHeap owner = this.owner;
+        if (owner != null){ // priority and date are both part of the heap order
+            owner.reposition(taskId);
+        }
     }
 
     public String getTaskId() {
@@ -103,6 +151,25 @@ public class MantainanceTask {
 
 
 
+    public LocalDate getScheduledDate() {
+        return scheduledDate;
+    }
+
+    public TaskStatus getTaskStatus() {
+        return taskStatus;
+    }
+
+    // used when a task is loaded back from a GridSnapshot
+    void restore(int priority, LocalDate scheduledDate, TaskStatus taskStatus) {
+        this.priority = priority;
+        this.scheduledDate = scheduledDate;
+        this.taskStatus = taskStatus;
+    }
+
+    void setTaskStatus(TaskStatus taskStatus) {
+        this.taskStatus = taskStatus;
+    }
+
     public String getComponentId() {
         return componentId;
     }
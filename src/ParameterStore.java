@@ -0,0 +1,425 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// column copy of the electrical parameters of the registered generators and transformers, outside of the heap, for
+// fleet-wide scans. Opt-in (PowerGridController.enableParameterStore): a controller without it pays nothing, the
+// components only test a null field. It is not where the components keep their state: the heap fields stay the
+// source of truth and, once enabled, every change is written a second time here (PowerGenerator.refreshDerived,
+// Transformer.writeStore), so it costs a few stores per change and its own memory, and does not take anything off
+// the heap or the GC. What it buys is the scan: one column (all the excitation fields, all the apparent powers)
+// contiguous in memory instead of a walk from object to object, allocating nothing. That only pays once the
+// components no longer fit in the caches (in the benchmark the heap walk is faster up to ~10k components, the columns
+// from ~100k). A component receives a dense row when registered (like a breaker gets its BreakerBank slot); rows are
+// kept in chunks of 64k rows allocated once (columns inside a chunk one after the other) and a freed row, zeroed, is
+// reused by the next registration. A row is seen by the scans only once its first values are written; scans see
+// every value as last written, not a cut at one instant. generatorRow()/transformerRow() read a row through the
+// getters of the component.
+public class ParameterStore implements ComponentListener {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int ROW_MASK = CHUNK_ROWS - 1;
+
+    // generator columns, byte offset of each column inside a chunk
+    private static final int G_CURRENT = 0;                                   // int
+    private static final int G_VOLTAGE = G_CURRENT + 4 * CHUNK_ROWS;          // int
+    private static final int G_EXCITATION = G_VOLTAGE + 4 * CHUNK_ROWS;       // int
+    private static final int G_MAX_CAPACITY = G_EXCITATION + 4 * CHUNK_ROWS;  // double
+    private static final int G_POWER_FACTOR = G_MAX_CAPACITY + 8 * CHUNK_ROWS;
+    private static final int G_ACTIVE = G_POWER_FACTOR + 8 * CHUNK_ROWS;
+    private static final int G_REACTIVE = G_ACTIVE + 8 * CHUNK_ROWS;
+    private static final int G_SHIFT = G_REACTIVE + 8 * CHUNK_ROWS;
+    private static final int G_APPARENT = G_SHIFT + 8 * CHUNK_ROWS;
+    private static final int G_CHUNK_BYTES = G_APPARENT + 8 * CHUNK_ROWS;
+
+    // transformer columns, all doubles
+    private static final int T_PRIMARY_VOLTAGE = 0;
+    private static final int T_SECONDARY_VOLTAGE = T_PRIMARY_VOLTAGE + 8 * CHUNK_ROWS;
+    private static final int T_PRIMARY_CURRENT = T_SECONDARY_VOLTAGE + 8 * CHUNK_ROWS;
+    private static final int T_RATIO = T_PRIMARY_CURRENT + 8 * CHUNK_ROWS;
+    private static final int T_CHUNK_BYTES = T_RATIO + 8 * CHUNK_ROWS;
+
+    private final Table generators = new Table(G_CHUNK_BYTES);
+    private final Table transformers = new Table(T_CHUNK_BYTES);
+
+    // rows of one kind of component: the chunks, which rows are in use and the component of each row
+    private static final class Table {
+        private final int chunkBytes;
+        // replaced (grown) under the table lock only, read without it by the scans and the writers
+        private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+        private volatile long[] present = new long[0];
+        private volatile ElectricalComponent[] owners = new ElectricalComponent[0];
+        private int[] freeRows = new int[16];
+        private int freeCount;
+        private volatile int rowCount; // rows ever used, free ones included, the scans stop there
+        private int size;
+
+        Table(int chunkBytes) {
+            this.chunkBytes = chunkBytes;
+        }
+
+        // the row is not in the scans until published
+        synchronized int allocate(ElectricalComponent owner) {
+            int row = freeCount > 0 ? freeRows[--freeCount] : rowCount;
+            if (row >>> CHUNK_SHIFT >= chunks.length) {
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[chunks.length] = ByteBuffer.allocateDirect(chunkBytes).order(ByteOrder.nativeOrder());
+                owners = Arrays.copyOf(owners, grown.length * CHUNK_ROWS);
+                present = Arrays.copyOf(present, grown.length * CHUNK_ROWS / 64);
+                chunks = grown;
+            }
+            owners[row] = owner;
+            if (row == rowCount) {
+                rowCount = row + 1; // after the chunk exists
+            }
+            size++;
+            return row;
+        }
+
+        synchronized void publish(int row) {
+            present[row >>> 6] |= 1L << row;
+        }
+
+        // out of the scans, the row can then be cleared before free makes it available again
+        synchronized void retire(int row) {
+            owners[row] = null;
+            present[row >>> 6] &= ~(1L << row);
+        }
+
+        synchronized void free(int row) {
+            if (freeCount == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+            }
+            freeRows[freeCount++] = row;
+            size--;
+        }
+
+        ByteBuffer chunk(int row) {
+            return chunks[row >>> CHUNK_SHIFT];
+        }
+
+        // bitset words holding rows in use
+        int words() {
+            return (rowCount + 63) >>> 6;
+        }
+    }
+
+    // registry side: rows follow registration. The first write happens under the component lock, like the later ones
+    // (PowerGenerator.refreshDerived is synchronized), so a change racing with the registration cannot be lost; the
+    // row joins the scans after it, and leaves them before it is zeroed
+
+    @Override
+    public void componentRegistered(String componentID, ElectricalComponent ec) {
+        if (ec instanceof PowerGenerator) {
+            PowerGenerator generator = (PowerGenerator) ec;
+            synchronized (generator) {
+                if (generator.store() == this) {
+                    return;
+                }
+                int row = generators.allocate(generator);
+                generator.attachStore(this, row);
+                generators.publish(row);
+            }
+        }
+        else if (ec instanceof Transformer) {
+            Transformer transformer = (Transformer) ec;
+            synchronized (transformer) {
+                if (transformer.store() == this) {
+                    return;
+                }
+                int row = transformers.allocate(transformer);
+                transformer.attachStore(this, row);
+                transformers.publish(row);
+            }
+        }
+    }
+
+    @Override
+    public void componentRemoved(String componentID, ElectricalComponent ec) {
+        if (ec instanceof PowerGenerator) {
+            PowerGenerator generator = (PowerGenerator) ec;
+            synchronized (generator) {
+                if (generator.store() != this) {
+                    return;
+                }
+                int row = generator.storeRow();
+                generator.detachStore();
+                generators.retire(row);
+                writeGenerator(row, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+                generators.free(row);
+            }
+        }
+        else if (ec instanceof Transformer) {
+            Transformer transformer = (Transformer) ec;
+            synchronized (transformer) {
+                if (transformer.store() != this) {
+                    return;
+                }
+                int row = transformer.storeRow();
+                transformer.detachStore();
+                transformers.retire(row);
+                writeTransformer(row, 0, 0, 0, 0);
+                transformers.free(row);
+            }
+        }
+    }
+
+    // components registered before the store was added as a listener; each is taken under its lock, where the
+    // registry changes it, so one removed meanwhile is skipped and one registered meanwhile is not attached twice
+    void attachRegistered(Iterable<ElectricalComponent> components) {
+        for (ElectricalComponent ec : components) {
+            synchronized (ec) {
+                if (ec.registrySequence >= 0) {
+                    componentRegistered(null, ec);
+                }
+            }
+        }
+    }
+
+    // component side, called by the component whenever its parameters change
+
+    void writeGenerator(int row, int current, int voltage, int excitationField, double maxCapacity,
+                        double powerFactor, double activePower, double reactivePower, double shiftPhaseAngle,
+                        double apparentPower) {
+        ByteBuffer chunk = generators.chunk(row);
+        int r = row & ROW_MASK;
+        chunk.putInt(G_CURRENT + 4 * r, current);
+        chunk.putInt(G_VOLTAGE + 4 * r, voltage);
+        chunk.putInt(G_EXCITATION + 4 * r, excitationField);
+        chunk.putDouble(G_MAX_CAPACITY + 8 * r, maxCapacity);
+        chunk.putDouble(G_POWER_FACTOR + 8 * r, powerFactor);
+        chunk.putDouble(G_ACTIVE + 8 * r, activePower);
+        chunk.putDouble(G_REACTIVE + 8 * r, reactivePower);
+        chunk.putDouble(G_SHIFT + 8 * r, shiftPhaseAngle);
+        chunk.putDouble(G_APPARENT + 8 * r, apparentPower);
+    }
+
+    void writeTransformer(int row, double primaryVoltage, double secondaryVoltage, double primaryCurrent,
+                          double transformationRatio) {
+        ByteBuffer chunk = transformers.chunk(row);
+        int r = row & ROW_MASK;
+        chunk.putDouble(T_PRIMARY_VOLTAGE + 8 * r, primaryVoltage);
+        chunk.putDouble(T_SECONDARY_VOLTAGE + 8 * r, secondaryVoltage);
+        chunk.putDouble(T_PRIMARY_CURRENT + 8 * r, primaryCurrent);
+        chunk.putDouble(T_RATIO + 8 * r, transformationRatio);
+    }
+
+    // fleet-wide scans, a column at a time, 64 rows per bitset word (a word never spans two chunks)
+
+    public double totalApparentPower() {
+        return sumGenerators(G_APPARENT);
+    }
+
+    public double totalActivePower() {
+        return sumGenerators(G_ACTIVE);
+    }
+
+    public double totalReactivePower() {
+        return sumGenerators(G_REACTIVE);
+    }
+
+    private double sumGenerators(int column) {
+        int words = generators.words();
+        ByteBuffer[] chunks = generators.chunks;
+        long[] present = generators.present;
+        double total = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = present[w];
+            if (bits == 0) {
+                continue;
+            }
+            ByteBuffer chunk = chunks[(w << 6) >>> CHUNK_SHIFT];
+            int base = column + 8 * ((w << 6) & ROW_MASK);
+            if (bits == -1L) { // full word, no test per row
+                for (int i = 0; i < 64; i++) {
+                    total += chunk.getDouble(base + 8 * i);
+                }
+                continue;
+            }
+            for (; bits != 0; bits &= bits - 1) {
+                total += chunk.getDouble(base + 8 * Long.numberOfTrailingZeros(bits));
+            }
+        }
+        return total;
+    }
+
+    // rows of the generators whose excitation field is below the threshold (the monitorGridStatus fault rule), in
+    // row order; returns how many, only the first rows.length are stored
+    public int generatorsBelowExcitation(int threshold, int[] rows) {
+        int words = generators.words();
+        ByteBuffer[] chunks = generators.chunks;
+        long[] present = generators.present;
+        int found = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = present[w];
+            if (bits == 0) {
+                continue;
+            }
+            ByteBuffer chunk = chunks[(w << 6) >>> CHUNK_SHIFT];
+            int first = w << 6;
+            int base = G_EXCITATION + 4 * (first & ROW_MASK);
+            for (; bits != 0; bits &= bits - 1) {
+                int i = Long.numberOfTrailingZeros(bits);
+                if (chunk.getInt(base + 4 * i) < threshold) {
+                    if (found < rows.length) {
+                        rows[found] = first + i;
+                    }
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    // transformers failing their operatingParametersValidation limits
+    public int transformersOutOfLimits(double maxPrimaryVoltage, double maxPrimaryCurrent) {
+        int words = transformers.words();
+        ByteBuffer[] chunks = transformers.chunks;
+        long[] present = transformers.present;
+        int found = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = present[w];
+            if (bits == 0) {
+                continue;
+            }
+            ByteBuffer chunk = chunks[(w << 6) >>> CHUNK_SHIFT];
+            int r = (w << 6) & ROW_MASK;
+            for (; bits != 0; bits &= bits - 1) {
+                int i = r + Long.numberOfTrailingZeros(bits);
+                if (chunk.getDouble(T_PRIMARY_VOLTAGE + 8 * i) > maxPrimaryVoltage
+                        || chunk.getDouble(T_PRIMARY_CURRENT + 8 * i) > maxPrimaryCurrent) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    public int generatorCount() {
+        return generators.size;
+    }
+
+    public int transformerCount() {
+        return transformers.size;
+    }
+
+    // component of a row, null if the row is free
+    public PowerGenerator generatorAt(int row) {
+        ElectricalComponent[] owners = generators.owners;
+        return row < owners.length ? (PowerGenerator) owners[row] : null;
+    }
+
+    public Transformer transformerAt(int row) {
+        ElectricalComponent[] owners = transformers.owners;
+        return row < owners.length ? (Transformer) owners[row] : null;
+    }
+
+    // flyweights: one instance moved from row to row, getters named as on the components
+    public GeneratorRow generatorRow() {
+        return new GeneratorRow();
+    }
+
+    public TransformerRow transformerRow() {
+        return new TransformerRow();
+    }
+
+    public final class GeneratorRow {
+        private ByteBuffer chunk;
+        private int row;
+        private int r;
+
+        private GeneratorRow() {
+        }
+
+        public GeneratorRow moveTo(int row) {
+            this.chunk = generators.chunk(row);
+            this.row = row;
+            this.r = row & ROW_MASK;
+            return this;
+        }
+
+        public int row() {
+            return row;
+        }
+
+        public PowerGenerator component() {
+            return generatorAt(row);
+        }
+
+        public int getCurrent() {
+            return chunk.getInt(G_CURRENT + 4 * r);
+        }
+
+        public int getVoltage() {
+            return chunk.getInt(G_VOLTAGE + 4 * r);
+        }
+
+        public int getExcitationField() {
+            return chunk.getInt(G_EXCITATION + 4 * r);
+        }
+
+        public double getMaxCapacity() {
+            return chunk.getDouble(G_MAX_CAPACITY + 8 * r);
+        }
+
+        public double getPowerFactor() {
+            return chunk.getDouble(G_POWER_FACTOR + 8 * r);
+        }
+
+        public double getActivePower() {
+            return chunk.getDouble(G_ACTIVE + 8 * r);
+        }
+
+        public double getReactivePower() {
+            return chunk.getDouble(G_REACTIVE + 8 * r);
+        }
+
+        public double getShiftPhaseAngle() {
+            return chunk.getDouble(G_SHIFT + 8 * r);
+        }
+
+        public double getApparentPower() {
+            return chunk.getDouble(G_APPARENT + 8 * r);
+        }
+    }
+
+    public final class TransformerRow {
+        private ByteBuffer chunk;
+        private int row;
+        private int r;
+
+        private TransformerRow() {
+        }
+
+        public TransformerRow moveTo(int row) {
+            this.chunk = transformers.chunk(row);
+            this.row = row;
+            this.r = row & ROW_MASK;
+            return this;
+        }
+
+        public int row() {
+            return row;
+        }
+
+        public Transformer component() {
+            return transformerAt(row);
+        }
+
+        public double getPrimaryVoltage() {
+            return chunk.getDouble(T_PRIMARY_VOLTAGE + 8 * r);
+        }
+
+        public double getSecondaryVoltage() {
+            return chunk.getDouble(T_SECONDARY_VOLTAGE + 8 * r);
+        }
+
+        public double getPrimaryCurrent() {
+            return chunk.getDouble(T_PRIMARY_CURRENT + 8 * r);
+        }
+
+        public double getSecondaryCurrent() {
+            return getPrimaryCurrent() * chunk.getDouble(T_RATIO + 8 * r);
+        }
+    }
+}
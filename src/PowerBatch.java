@@ -0,0 +1,163 @@
+// generator power formulas (calculateGeneratedElectricPower, calculateEfficiency, the loadRephase recalculation)
+// for a whole array of generators in one call. Each call gathers the fields of the generators into primitive
+// columns, runs one of the Kernels over the columns and, for loadRephase, hands the results back (acos/sin are
+// computed once per distinct corrected power factor instead of once per generator). Two implementations of the
+// kernels: VectorKernels (src-vector/, on the jdk.incubator.vector API) when its classes are on the class path and
+// the JVM runs with --add-modules jdk.incubator.vector, the plain loops of Scalar otherwise or with
+// -Dgrid.vector=false. The arrays are allocated once per instance and grown when a larger fleet comes, an instance
+// is not thread safe.
+//
+// the results are the same as the per-generator methods: same operations in the same order (the vector kernels
+// use no fused multiply-add), the only difference is x * x instead of Math.pow(x, 2), which is exact as well.
+public final class PowerBatch {
+    // the formulas over columns, for the first n elements. Also usable on their own (telemetry, ParameterStore
+    // exports, power flow results)
+    public interface Kernels {
+        // out[i] = sqrt(active[i]^2 + reactive[i]^2)
+        void apparentPower(double[] active, double[] reactive, double[] out, int n);
+
+        // out[i] = numerator[i] / denominator[i], out may be one of the inputs
+        void divide(double[] numerator, double[] denominator, double[] out, int n);
+
+        // active[i] = 3 * (voltage[i] * current[i] * factor[i]), reactive[i] the same with sine[i]; the
+        // voltage * current product stays an int product like in loadRephase
+        void rephase(int[] voltage, int[] current, double[] factor, double[] sine, double[] active,
+                     double[] reactive, int n);
+    }
+
+    // counted loops with no call and no branch inside, which C2 may still compile to SIMD instructions
+    public static final Kernels SCALAR = new Scalar();
+    private static final Kernels VECTOR = loadVector();
+    public static final Kernels DEFAULT_KERNELS =
+            VECTOR != null && Boolean.parseBoolean(System.getProperty("grid.vector", "true")) ? VECTOR : SCALAR;
+
+    private final Kernels kernels;
+    private int[] voltage = new int[0];
+    private int[] current = new int[0];
+    private double[] active = new double[0];
+    private double[] reactive = new double[0];
+    private double[] input = new double[0];
+    private double[] factor = new double[0];
+    private double[] sine = new double[0];
+
+    public PowerBatch() {
+        this(DEFAULT_KERNELS);
+    }
+
+    public PowerBatch(Kernels kernels) {
+        this.kernels = kernels;
+    }
+
+    // the Vector API kernels, null when they cannot be loaded in this JVM
+    public static Kernels vectorKernels() {
+        return VECTOR;
+    }
+
+    private static Kernels loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (Kernels) Class.forName("VectorKernels").getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) { // src-vector not compiled in
+            return null;
+        }
+    }
+
+    public Kernels kernels() {
+        return kernels;
+    }
+
+    // out[i] = calculateGeneratedElectricPower of generators[i], for the first count generators
+    public void apparentPower(PowerGenerator[] generators, int count, double[] out) {
+        gatherPower(generators, count);
+        kernels.apparentPower(active, reactive, out, count);
+    }
+
+    // out[i] = calculateEfficiency of generators[i]
+    public void efficiency(PowerGenerator[] generators, int count, double[] out) {
+        gatherPower(generators, count);
+        for (int i = 0; i < count; i++) {
+            input[i] = generators[i].getInputPower();
+        }
+        kernels.apparentPower(active, reactive, out, count);
+        kernels.divide(out, input, out, count);
+    }
+
+    // a generator changing meanwhile may give the old value of one field and the new of another, as when its
+    // getters are called one after the other
+    private void gatherPower(PowerGenerator[] generators, int count) {
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            PowerGenerator generator = generators[i];
+            active[i] = generator.activePower;
+            reactive[i] = generator.reactivePower;
+        }
+    }
+
+    // loadRephase of every generator: the power factor goes to the corrected one, active and reactive power are
+    // computed again for all of them in one pass, then each generator takes its values (and notifies its change)
+    public void loadRephase(PowerGenerator[] generators, int count) {
+        ensureCapacity(count);
+        double lastFactor = Double.NaN;
+        double lastSine = Double.NaN;
+        for (int i = 0; i < count; i++) {
+            PowerGenerator generator = generators[i];
+            voltage[i] = generator.voltage;
+            current[i] = generator.current;
+            double f = generator.getPowerFactorCorrected();
+            if (f != lastFactor) { // usually the same target for the whole fleet, acos and sin once
+                lastFactor = f;
+                lastSine = Math.sin(Math.toDegrees(Math.acos(f)));
+            }
+            factor[i] = f;
+            sine[i] = lastSine;
+        }
+        kernels.rephase(voltage, current, factor, sine, active, reactive, count);
+        for (int i = 0; i < count; i++) {
+            generators[i].applyRephase(factor[i], active[i], reactive[i]);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (active.length >= count) {
+            return;
+        }
+        int capacity = Math.max(count, active.length * 2);
+        voltage = new int[capacity];
+        current = new int[capacity];
+        active = new double[capacity];
+        reactive = new double[capacity];
+        input = new double[capacity];
+        factor = new double[capacity];
+        sine = new double[capacity];
+    }
+
+    private static final class Scalar implements Kernels {
+        @Override
+        public void apparentPower(double[] active, double[] reactive, double[] out, int n) {
+            for (int i = 0; i < n; i++) {
+                double p = active[i];
+                double q = reactive[i];
+                out[i] = Math.sqrt(p * p + q * q);
+            }
+        }
+
+        @Override
+        public void divide(double[] numerator, double[] denominator, double[] out, int n) {
+            for (int i = 0; i < n; i++) {
+                out[i] = numerator[i] / denominator[i];
+            }
+        }
+
+        @Override
+        public void rephase(int[] voltage, int[] current, double[] factor, double[] sine, double[] active,
+                            double[] reactive, int n) {
+            for (int i = 0; i < n; i++) {
+                int vi = voltage[i] * current[i];
+                active[i] = 3 * (vi * factor[i]);
+                reactive[i] = 3 * (vi * sine[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// bus/branch model for the power flow, per unit on a 100 MVA base. Buses and branches are kept in growable primitive
+// arrays; the pattern of the admittance matrix depends only on which branches exist, not on whether they are in
+// service, so opening a breaker or changing the loads leaves it the same and the solver keeps its factorization.
+//
+// fromGrid maps the registered components: every generator has its terminal bus, every transformer is a branch from
+// the generator bus to its own secondary bus, every breaker below a transformer is a (very low impedance) branch from
+// that secondary bus to the substation busbar, where the grid demand is taken. The first operational generator is
+// the slack.
+public class PowerFlowNetwork {
+    public static final int PQ = 0;
+    public static final int PV = 1;
+    public static final int SLACK = 2;
+    public static final double BASE_MVA = 100;
+
+    // typical step up transformer, per unit on its own rating (taken equal to the generator capacity)
+    private static final double TRANSFORMER_R = 0.005;
+    private static final double TRANSFORMER_X = 0.12;
+    // closed breaker: a real zero impedance would have to merge the two buses, and change the pattern at each switching
+    private static final double BREAKER_X = 1e-4;
+    private static final double LOAD_POWER_FACTOR = 0.95;
+
+    private int buses;
+    private int[] type = new int[16];
+    private double[] loadP = new double[16];
+    private double[] loadQ = new double[16];
+    private double[] generation = new double[16];
+    private double[] voltageSet = new double[16];
+
+    private int branches;
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private double[] resistance = new double[16];
+    private double[] reactance = new double[16];
+    private double[] charging = new double[16];
+    private double[] tap = new double[16];
+    private boolean[] inService = new boolean[16];
+
+    // bus pattern, built on demand and dropped when a bus or branch is added
+    private int[] patternRows;
+    private int[] patternColumns;
+    private int[] branchEntries; // per branch: entries ff, ft, tf, tt in the pattern
+
+    public int addBus(int busType, double loadMW, double loadMVAr, double generationMW, double voltage) {
+        if (buses == type.length) {
+            int capacity = buses * 2;
+            type = Arrays.copyOf(type, capacity);
+            loadP = Arrays.copyOf(loadP, capacity);
+            loadQ = Arrays.copyOf(loadQ, capacity);
+            generation = Arrays.copyOf(generation, capacity);
+            voltageSet = Arrays.copyOf(voltageSet, capacity);
+        }
+        type[buses] = busType;
+        loadP[buses] = loadMW / BASE_MVA;
+        loadQ[buses] = loadMVAr / BASE_MVA;
+        generation[buses] = generationMW / BASE_MVA;
+        voltageSet[buses] = voltage;
+        patternRows = null;
+        return buses++;
+    }
+
+    // r, x, b per unit on the system base, ratio is the off nominal tap on the from side (1 = nominal)
+    public int addBranch(int fromBus, int toBus, double r, double x, double b, double ratio) {
+        if (branches == from.length) {
+            int capacity = branches * 2;
+            from = Arrays.copyOf(from, capacity);
+            to = Arrays.copyOf(to, capacity);
+            resistance = Arrays.copyOf(resistance, capacity);
+            reactance = Arrays.copyOf(reactance, capacity);
+            charging = Arrays.copyOf(charging, capacity);
+            tap = Arrays.copyOf(tap, capacity);
+            inService = Arrays.copyOf(inService, capacity);
+        }
+        from[branches] = fromBus;
+        to[branches] = toBus;
+        resistance[branches] = r;
+        reactance[branches] = x;
+        charging[branches] = b;
+        tap[branches] = ratio;
+        inService[branches] = true;
+        patternRows = null;
+        return branches++;
+    }
+
+    public void setInService(int branch, boolean value) {
+        inService[branch] = value;
+    }
+
+    public boolean isInService(int branch) {
+        return inService[branch];
+    }
+
+    public void setLoad(int bus, double loadMW, double loadMVAr) {
+        loadP[bus] = loadMW / BASE_MVA;
+        loadQ[bus] = loadMVAr / BASE_MVA;
+    }
+
+    public void setGeneration(int bus, double generationMW) {
+        generation[bus] = generationMW / BASE_MVA;
+    }
+
+    public void setBusType(int bus, int busType) {
+        type[bus] = busType;
+    }
+
+    public int getBusCount() {
+        return buses;
+    }
+
+    public int getBranchCount() {
+        return branches;
+    }
+
+    int busType(int bus) {
+        return type[bus];
+    }
+
+    // net injection, per unit
+    double injectionP(int bus) {
+        return generation[bus] - loadP[bus];
+    }
+
+    double injectionQ(int bus) {
+        return -loadQ[bus];
+    }
+
+    double voltageSet(int bus) {
+        return voltageSet[bus];
+    }
+
+    int from(int branch) {
+        return from[branch];
+    }
+
+    int to(int branch) {
+        return to[branch];
+    }
+
+    double reactance(int branch) {
+        return reactance[branch];
+    }
+
+    int[] patternRows() {
+        buildPattern();
+        return patternRows;
+    }
+
+    int[] patternColumns() {
+        buildPattern();
+        return patternColumns;
+    }
+
+    // G and B of the admittance matrix on the bus pattern, out of service branches give zeros
+    void admittance(double[] g, double[] b) {
+        buildPattern();
+        Arrays.fill(g, 0, patternColumns.length, 0);
+        Arrays.fill(b, 0, patternColumns.length, 0);
+        for (int k = 0; k < branches; k++) {
+            if (!inService[k]) {
+                continue;
+            }
+            double z = resistance[k] * resistance[k] + reactance[k] * reactance[k];
+            double gs = resistance[k] / z;
+            double bs = -reactance[k] / z;
+            double t = tap[k];
+            int[] e = entries(k);
+            g[e[0]] += gs / (t * t);
+            b[e[0]] += (bs + charging[k] / 2) / (t * t);
+            g[e[1]] -= gs / t;
+            b[e[1]] -= bs / t;
+            g[e[2]] -= gs / t;
+            b[e[2]] -= bs / t;
+            g[e[3]] += gs;
+            b[e[3]] += bs + charging[k] / 2;
+        }
+    }
+
+    private final int[] entryBuffer = new int[4];
+
+    // pattern positions of the four entries of a branch
+    int[] entries(int branch) {
+        buildPattern();
+        entryBuffer[0] = branchEntries[4 * branch];
+        entryBuffer[1] = branchEntries[4 * branch + 1];
+        entryBuffer[2] = branchEntries[4 * branch + 2];
+        entryBuffer[3] = branchEntries[4 * branch + 3];
+        return entryBuffer;
+    }
+
+    private void buildPattern() {
+        if (patternRows != null) {
+            return;
+        }
+        int[] degree = new int[buses + 1];
+        for (int k = 0; k < branches; k++) {
+            degree[from[k] + 1]++;
+            degree[to[k] + 1]++;
+        }
+        int[] rows = new int[buses + 1];
+        for (int i = 0; i < buses; i++) {
+            rows[i + 1] = rows[i] + degree[i + 1] + 1;
+        }
+        int[] columns = new int[rows[buses]];
+        int[] fill = Arrays.copyOf(rows, buses);
+        for (int i = 0; i < buses; i++) {
+            columns[fill[i]++] = i;
+        }
+        for (int k = 0; k < branches; k++) {
+            columns[fill[from[k]]++] = to[k];
+            columns[fill[to[k]]++] = from[k];
+        }
+        // sort and squeeze parallel branches
+        int[] compactRows = new int[buses + 1];
+        int at = 0;
+        for (int i = 0; i < buses; i++) {
+            Arrays.sort(columns, rows[i], fill[i]);
+            int start = at;
+            for (int k = rows[i]; k < fill[i]; k++) {
+                if (at == start || columns[at - 1] != columns[k]) {
+                    columns[at++] = columns[k];
+                }
+            }
+            compactRows[i + 1] = at;
+        }
+        patternRows = compactRows;
+        patternColumns = Arrays.copyOf(columns, at);
+        branchEntries = new int[4 * branches];
+        for (int k = 0; k < branches; k++) {
+            branchEntries[4 * k] = position(from[k], from[k]);
+            branchEntries[4 * k + 1] = position(from[k], to[k]);
+            branchEntries[4 * k + 2] = position(to[k], from[k]);
+            branchEntries[4 * k + 3] = position(to[k], to[k]);
+        }
+    }
+
+    int position(int row, int column) {
+        return Arrays.binarySearch(patternColumns, patternRows[row], patternRows[row + 1], column);
+    }
+
+    // bus of each component mapped by fromGrid
+    public static final class GridMapping {
+        public final PowerFlowNetwork network;
+        public final int busbar;
+        final Map<ElectricalComponent, Integer> buses = new IdentityHashMap<>();
+        final Map<ElectricalComponent, Integer> branches = new IdentityHashMap<>();
+
+        GridMapping(PowerFlowNetwork network, int busbar) {
+            this.network = network;
+            this.busbar = busbar;
+        }
+
+        // terminal bus of a generator, secondary bus of a transformer, -1 otherwise
+        public int busOf(ElectricalComponent ec) {
+            Integer bus = buses.get(ec);
+            return bus == null ? -1 : bus;
+        }
+
+        // branch of a transformer or breaker, -1 otherwise
+        public int branchOf(ElectricalComponent ec) {
+            Integer branch = branches.get(ec);
+            return branch == null ? -1 : branch;
+        }
+    }
+
+    public static GridMapping fromGrid(ComponentRegistry registry, double demand) {
+        PowerFlowNetwork network = new PowerFlowNetwork();
+        double demandMW = demand / 1e6;
+        double demandMVAr = demandMW * Math.tan(Math.acos(LOAD_POWER_FACTOR));
+        GridMapping mapping = new GridMapping(network, network.addBus(PQ, demandMW, demandMVAr, 0, 1));
+        boolean slack = false;
+        for (ElectricalComponent ec : registry.ofType(ComponentType.GENERATOR)) {
+            if (!(ec instanceof PowerGenerator)) {
+                continue;
+            }
+            PowerGenerator gen = (PowerGenerator) ec;
+            boolean running = gen.getStatus() == PowerComponentStatus.OPERATIONAL
+                    && (gen.cb == null || !gen.cb.checkCircuitStatus());
+            int busType = running ? (slack ? PV : SLACK) : PQ;
+            slack |= running;
+            mapping.buses.put(gen, network.addBus(busType, 0, 0, running ? gen.getOutput() / 1e6 : 0, 1));
+        }
+        for (ElectricalComponent ec : registry.ofType(ComponentType.TRANSFORMER)) {
+            if (!(ec instanceof Transformer)) {
+                continue;
+            }
+            Transformer transformer = (Transformer) ec;
+            int generatorBus = mapping.busOf(transformer.getPowerGenerator());
+            if (generatorBus < 0) {
+                continue;
+            }
+            int secondary = network.addBus(PQ, 0, 0, 0, 1);
+            double scale = BASE_MVA / (transformer.getPowerGenerator().getMaxCapacity() / 1e6);
+            int branch = network.addBranch(generatorBus, secondary, TRANSFORMER_R * scale, TRANSFORMER_X * scale, 0, 1);
+            network.setInService(branch, transformer.getStatus() == PowerComponentStatus.OPERATIONAL);
+            mapping.buses.put(transformer, secondary);
+            mapping.branches.put(transformer, branch);
+        }
+        for (ElectricalComponent ec : registry.ofType(ComponentType.CIRCUIT_BREAKER)) {
+            if (!(ec instanceof CircuitBreaker)) {
+                continue;
+            }
+            CircuitBreaker cb = (CircuitBreaker) ec;
+            int secondary = mapping.busOf(cb.transformer);
+            if (secondary < 0) {
+                continue;
+            }
+            int branch = network.addBranch(secondary, mapping.busbar, 0, BREAKER_X, 0, 1);
+            network.setInService(branch, !cb.checkCircuitStatus());
+            mapping.branches.put(cb, branch);
+        }
+        return mapping;
+    }
+}
@@ -0,0 +1,327 @@
+import java.util.Arrays;
+
+// DC and Newton-Raphson AC power flow on a PowerFlowNetwork. The solver keeps the symbolic factorizations (one for the
+// DC matrix, one for the Jacobian) and reuses them as long as the network pattern does not change: a new load, a new
+// dispatch or a breaker opening only costs the numeric factorizations. The last solution is the starting point of
+// the next AC solve.
+//
+// Islands are found at every solve: an island without slack gets its first PV bus as slack, an island without
+// generation is de-energized (voltage 0).
+public class PowerFlowSolver {
+    private static final int DEAD = 3;
+
+    private SparseLU dcFactor;
+    private SparseLU acFactor;
+    private int symbolicFactorizations;
+
+    private int[] effective = new int[0]; // bus types used by the last solve
+    private int[] island = new int[0];    // lowest bus of the island of each bus
+    private double[] angle = new double[0];
+    private double[] voltage = new double[0];
+    private double[] injectedP = new double[0]; // computed injections of the last solution, per unit
+    private double[] injectedQ = new double[0];
+    private int iterations;
+    private double mismatch;
+    private boolean converged;
+
+    // linear approximation: flat voltages, lossless branches, P = B' theta
+    public boolean solveDc(PowerFlowNetwork network) {
+        int n = network.getBusCount();
+        int[] rows = network.patternRows();
+        int[] columns = network.patternColumns();
+        prepare(network);
+        if (dcFactor == null || !dcFactor.matches(n, rows, columns, 1)) {
+            dcFactor = SparseLU.symbolic(n, rows, columns, 1);
+            symbolicFactorizations++;
+        }
+        double[] matrix = new double[columns.length];
+        for (int k = 0; k < network.getBranchCount(); k++) {
+            if (!network.isInService(k)) {
+                continue;
+            }
+            double b = 1 / network.reactance(k);
+            int[] e = network.entries(k);
+            matrix[e[0]] += b;
+            matrix[e[1]] -= b;
+            matrix[e[2]] -= b;
+            matrix[e[3]] += b;
+        }
+        double[] rhs = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (effective[i] == PowerFlowNetwork.SLACK || effective[i] == DEAD) {
+                identityRow(matrix, rows, columns, i, 1);
+            }
+            else {
+                rhs[i] = network.injectionP(i);
+            }
+        }
+        dcFactor.factor(matrix);
+        dcFactor.solve(rhs);
+        for (int i = 0; i < n; i++) {
+            angle[i] = rhs[i];
+            voltage[i] = effective[i] == DEAD ? 0 : 1;
+            injectedP[i] = effective[i] == DEAD ? 0 : network.injectionP(i);
+            injectedQ[i] = 0;
+        }
+        // lossless: the slack buses take whatever is missing in their island (shared evenly if more than one)
+        balanceSlacks(network);
+        iterations = 1;
+        mismatch = 0;
+        converged = true;
+        return true;
+    }
+
+    // Newton-Raphson in polar coordinates, tolerance on the largest P/Q mismatch in per unit
+    public boolean solveAc(PowerFlowNetwork network, double tolerance, int maxIterations) {
+        int n = network.getBusCount();
+        int[] rows = network.patternRows();
+        int[] columns = network.patternColumns();
+        boolean warm = angle.length == n;
+        prepare(network);
+        if (acFactor == null || !acFactor.matches(n, rows, columns, 2)) {
+            acFactor = SparseLU.symbolic(n, rows, columns, 2);
+            symbolicFactorizations++;
+        }
+        for (int i = 0; i < n; i++) {
+            if (effective[i] == DEAD) {
+                angle[i] = 0;
+                voltage[i] = 0;
+            }
+            else if (effective[i] != PowerFlowNetwork.PQ) {
+                voltage[i] = network.voltageSet(i);
+            }
+            else if (!warm || voltage[i] <= 0) {
+                voltage[i] = 1;
+            }
+            if (!warm) {
+                angle[i] = 0;
+            }
+        }
+        double[] g = new double[columns.length];
+        double[] b = new double[columns.length];
+        network.admittance(g, b);
+        double[] jacobian = new double[columns.length * 4];
+        double[] rhs = new double[2 * n];
+        converged = false;
+        for (iterations = 0; ; iterations++) {
+            injections(n, rows, columns, g, b);
+            mismatch = 0;
+            for (int i = 0; i < n; i++) {
+                double dp = 0;
+                double dq = 0;
+                if (effective[i] == PowerFlowNetwork.PQ || effective[i] == PowerFlowNetwork.PV) {
+                    dp = network.injectionP(i) - injectedP[i];
+                }
+                if (effective[i] == PowerFlowNetwork.PQ) {
+                    dq = network.injectionQ(i) - injectedQ[i];
+                }
+                rhs[2 * i] = dp;
+                rhs[2 * i + 1] = dq;
+                mismatch = Math.max(mismatch, Math.max(Math.abs(dp), Math.abs(dq)));
+            }
+            if (mismatch < tolerance) {
+                converged = true;
+                break;
+            }
+            if (iterations == maxIterations) {
+                break;
+            }
+            jacobian(n, rows, columns, g, b, jacobian);
+            acFactor.factor(jacobian);
+            acFactor.solve(rhs);
+            for (int i = 0; i < n; i++) {
+                angle[i] += rhs[2 * i];
+                voltage[i] += rhs[2 * i + 1];
+            }
+        }
+        return converged;
+    }
+
+    // effective bus types and island handling
+    private void prepare(PowerFlowNetwork network) {
+        int n = network.getBusCount();
+        if (angle.length != n) {
+            angle = new double[n];
+            voltage = new double[n];
+            injectedP = new double[n];
+            injectedQ = new double[n];
+            effective = new int[n];
+            island = new int[n];
+        }
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (int k = 0; k < network.getBranchCount(); k++) {
+            if (network.isInService(k)) {
+                int a = root(parent, network.from(k));
+                int c = root(parent, network.to(k));
+                if (a != c) {
+                    parent[Math.max(a, c)] = Math.min(a, c);
+                }
+            }
+        }
+        // per island root: 2 has a slack, 1 has a generator (first one becomes slack), 0 no source
+        int[] source = new int[n];
+        int[] firstGenerator = new int[n];
+        Arrays.fill(firstGenerator, -1);
+        for (int i = 0; i < n; i++) {
+            int r = root(parent, i);
+            int busType = network.busType(i);
+            if (busType == PowerFlowNetwork.SLACK) {
+                source[r] = 2;
+            }
+            else if (busType == PowerFlowNetwork.PV && source[r] == 0) {
+                source[r] = 1;
+                firstGenerator[r] = i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int r = root(parent, i);
+            island[i] = r;
+            if (source[r] == 0) {
+                effective[i] = DEAD;
+            }
+            else if (source[r] == 1 && firstGenerator[r] == i) {
+                effective[i] = PowerFlowNetwork.SLACK;
+            }
+            else {
+                effective[i] = network.busType(i);
+            }
+        }
+    }
+
+    private void balanceSlacks(PowerFlowNetwork network) {
+        int n = network.getBusCount();
+        double[] missing = new double[n];
+        int[] slacks = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (effective[i] == PowerFlowNetwork.SLACK) {
+                slacks[island[i]]++;
+            }
+            else {
+                missing[island[i]] -= injectedP[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (effective[i] == PowerFlowNetwork.SLACK) {
+                injectedP[i] = missing[island[i]] / slacks[island[i]];
+            }
+        }
+    }
+
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // the row of bus i says "this unknown does not move": 1 on the diagonal, 0 elsewhere (blockSize values per entry)
+    private static void identityRow(double[] matrix, int[] rows, int[] columns, int i, int blockSize) {
+        for (int e = rows[i]; e < rows[i + 1]; e++) {
+            for (int s = 0; s < blockSize; s++) {
+                for (int t = 0; t < blockSize; t++) {
+                    matrix[(e * blockSize + s) * blockSize + t] = columns[e] == i && s == t ? 1 : 0;
+                }
+            }
+        }
+    }
+
+    private void injections(int n, int[] rows, int[] columns, double[] g, double[] b) {
+        for (int i = 0; i < n; i++) {
+            double p = 0;
+            double q = 0;
+            for (int e = rows[i]; e < rows[i + 1]; e++) {
+                int k = columns[e];
+                double theta = angle[i] - angle[k];
+                double cos = Math.cos(theta);
+                double sin = Math.sin(theta);
+                p += voltage[k] * (g[e] * cos + b[e] * sin);
+                q += voltage[k] * (g[e] * sin - b[e] * cos);
+            }
+            injectedP[i] = voltage[i] * p;
+            injectedQ[i] = voltage[i] * q;
+        }
+    }
+
+    // 2x2 block per pattern entry: rows P, Q - columns angle, voltage
+    private void jacobian(int n, int[] rows, int[] columns, double[] g, double[] b, double[] jacobian) {
+        for (int i = 0; i < n; i++) {
+            if (effective[i] == PowerFlowNetwork.SLACK || effective[i] == DEAD) {
+                identityRow(jacobian, rows, columns, i, 2);
+                continue;
+            }
+            double vi = voltage[i];
+            for (int e = rows[i]; e < rows[i + 1]; e++) {
+                int k = columns[e];
+                int at = e * 4;
+                if (k == i) {
+                    jacobian[at] = -injectedQ[i] - b[e] * vi * vi;
+                    jacobian[at + 1] = injectedP[i] / vi + g[e] * vi;
+                    jacobian[at + 2] = injectedP[i] - g[e] * vi * vi;
+                    jacobian[at + 3] = injectedQ[i] / vi - b[e] * vi;
+                }
+                else {
+                    double theta = angle[i] - angle[k];
+                    double cos = Math.cos(theta);
+                    double sin = Math.sin(theta);
+                    double a = g[e] * sin - b[e] * cos;
+                    double c = g[e] * cos + b[e] * sin;
+                    jacobian[at] = vi * voltage[k] * a;
+                    jacobian[at + 1] = vi * c;
+                    jacobian[at + 2] = -vi * voltage[k] * c;
+                    jacobian[at + 3] = vi * a;
+                }
+                if (effective[i] == PowerFlowNetwork.PV) { // voltage held: the Q row becomes dV = 0
+                    jacobian[at + 2] = 0;
+                    jacobian[at + 3] = k == i ? 1 : 0;
+                }
+            }
+        }
+    }
+
+    public double getAngle(int bus) {
+        return angle[bus];
+    }
+
+    public double getVoltage(int bus) {
+        return voltage[bus];
+    }
+
+    public boolean isEnergized(int bus) {
+        return effective[bus] != DEAD;
+    }
+
+    // MW entering the bus from the network (generation minus load) in the last AC solution
+    public double getInjectionMW(int bus) {
+        return injectedP[bus] * PowerFlowNetwork.BASE_MVA;
+    }
+
+    // active losses of the last AC solution: whatever is injected and not consumed
+    public double getLossesMW() {
+        double losses = 0;
+        for (double p : injectedP) {
+            losses += p;
+        }
+        return losses * PowerFlowNetwork.BASE_MVA;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public double getMismatch() {
+        return mismatch;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    // how many times the pattern had to be analysed again, stays put while only values change
+    public int getSymbolicFactorizations() {
+        return symbolicFactorizations;
+    }
+}
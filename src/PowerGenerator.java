@@ -1,14 +1,12 @@
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
 
 public class PowerGenerator extends ElectricalComponent {
     public int current = 10000; // is public because transformer and circuit braker take power from generator
     public int voltage = 22000;
     private double maxCapacity = 450000000; //W   // correct it with max voltage and current
-    protected double powerFactor =  Math.random();
+    protected double powerFactor =  GridClock.current().nextRandom(); // seeded when a simulation is installed
     private double powerFactorCorrected = 0.95;
-    private List<LocalDate> mantainanceHist = new ArrayList<>();
     private double Pin = 780 * Math.pow(10, 6); // power out from gas turbine
     CircuitBreaker cb;
     PowerGridController controller;
@@ -18,6 +16,23 @@ public class PowerGenerator extends ElectricalComponent {
     protected double reactivePower = 3 * (this.voltage * this.current * Math.sin(shiftPhaseAngle));
     private double requiredCurrent = 0;
     private int excitationField = 20; // Tesla
+    private static final int MAX_CURRENT = 18000; // above it operatingParametersValidation fails
+    // production cost curve used by the economic dispatch, cost(P) = costNoLoad + costLinear * P + costQuadratic * P^2
+    // with P in MW and the cost per hour
+    private double costNoLoad = 0;
+    private double costLinear = 20;
+    private double costQuadratic = 0.01;
+    private double minOutput = 0; // W, lowest stable output while running
+    // running hours, counted on the grid clock (virtual time in a simulation)
+    private long startedAt = -1;
+    private long runningMillis;
+    // quantities derived from the electrical state, recomputed at every change (refreshDerived) and not at every read
+    private volatile long powerVersion;
+    private volatile double apparentPower;
+    private volatile double efficiency;
+    // row of the parameters in the controller ParameterStore, kept up to date with the fields by refreshDerived
+    private volatile ParameterStore store;
+    private int storeRow = -1;
 
     public PowerGenerator(String componentId, ComponentType componentType, PowerComponentStatus status,
                           LocalDate installationDate, LocalDate lastMaintenanceDate, PowerGridController controller,
@@ -25,6 +40,7 @@ public class PowerGenerator extends ElectricalComponent {
         super(componentId, componentType, status, installationDate, lastMaintenanceDate);
         this.controller = controller;
         this.cb = cb;
+        refreshDerived();
     }
 
     public void startGenerator(String onOff){
@@ -34,6 +50,11 @@ public class PowerGenerator extends ElectricalComponent {
         if (cb.checkCircuitStatus()){ // if contact off, generator is not under load, so can be verified all parameters
             if (operatingParametersValidation() && onOff.equals("on")){
                 updateStatus(PowerComponentStatus.OPERATIONAL);
+                synchronized (this){
+                    if (startedAt < 0){
+                        startedAt = GridClock.current().currentTimeMillis();
+                    }
+                }
             }
         }
 
@@ -41,18 +62,33 @@ public class PowerGenerator extends ElectricalComponent {
 
     public void stopGenerator(String command){
         updateStatus(PowerComponentStatus.OFFLINE);
+        synchronized (this){
+            if (startedAt >= 0){
+                runningMillis += GridClock.current().currentTimeMillis() - startedAt;
+                startedAt = -1;
+            }
+        }
+    }
+
+    public synchronized double getRunningHours(){
+        long running = runningMillis;
+        if (startedAt >= 0){
+            running += GridClock.current().currentTimeMillis() - startedAt;
+        }
+        return running / 3_600_000.0;
     }
 
     public void adjustOutput(int gridDemand){ // put here phiShift to consider engagement of supply transformers and
         // the need to rephase the machine via capacitors in parallel to the load line
-        double powerOut = calculateGeneratedElectricPower(activePower, reactivePower, powerFactor);
+        double powerOut = getApparentPower();
         if (gridDemand > maxCapacity){
             cb.openCircuit();
-            this.status = PowerComponentStatus.OFFLINE;
+            setStatus(PowerComponentStatus.OFFLINE);
         }
         else {
             this.requiredCurrent = gridDemand/this.voltage;
             this.current = (int) requiredCurrent;
+            parametersChanged();
         }
     }
 
@@ -63,32 +99,80 @@ public class PowerGenerator extends ElectricalComponent {
         return powerOutPut;
     }
 
-    @Override
-    public void addDateToMantainanceHist(LocalDate lastMaintenanceDate) {
-        mantainanceHist.add(lastMaintenanceDate);
-    }
-
 
     @Override
     public void performMantainance(TaskType taskType) {
         stopGenerator("off");
         cb.openCircuit();
         TaskStatus taskStatus = TaskStatus.IN_PROGRESS;
-        this.status = PowerComponentStatus.OFFLINE;
+        setStatus(PowerComponentStatus.OFFLINE);
     }
 
     @Override
     public double calculateEfficiency() {
+        return efficiency;
+    }
+
+    // calculateGeneratedElectricPower of the present state, cached until the next change
+    public double getApparentPower() {
+        return apparentPower;
+    }
+
+    // version stamp of the electrical state, changes each time the derived quantities are recomputed
+    public long getPowerVersion() {
+        return powerVersion;
+    }
+
+    // under the lock and from the latest fields, so whatever the interleaving of the setters the last one is current
+    private synchronized void refreshDerived() {
         double Pout = calculateGeneratedElectricPower(activePower, reactivePower, powerFactor);
-        double eff = Pout/Pin;
-        return eff;
+        apparentPower = Pout;
+        efficiency = Pout/Pin;
+        powerVersion++;
+        writeStore();
+    }
+
+    // under the generator lock
+    private void writeStore() {
+        ParameterStore store = this.store;
+        if (store != null) {
+            store.writeGenerator(storeRow, current, voltage, excitationField, maxCapacity, powerFactor, activePower,
+                    reactivePower, shiftPhaseAngle, apparentPower);
+        }
+    }
+
+    // called by the store under the generator lock
+    void attachStore(ParameterStore store, int row) {
+        this.storeRow = row;
+        this.store = store;
+        writeStore();
+    }
+
+    void detachStore() {
+        this.store = null;
+        this.storeRow = -1;
+    }
+
+    ParameterStore store() {
+        return store;
+    }
+
+    int storeRow() {
+        return storeRow;
+    }
+
+    // every setter of the electrical state ends here
+    @Override
+    protected void parametersChanged() {
+        refreshDerived();
+        super.parametersChanged();
     }
 
 
 
     @Override
     protected boolean operatingParametersValidation() {
-        if (this.voltage <= 25000 && requiredCurrent <= 18000){  // if current and voltage exceeds the maximal values
+        if (this.voltage <= 25000 && requiredCurrent <= MAX_CURRENT){  // if current and voltage exceeds the maximal values
             // the component, no matter what is, will be isolated from the rest of the grid.
             return true;
         }
@@ -100,12 +184,52 @@ public class PowerGenerator extends ElectricalComponent {
         return maxCapacity;
     }
 
+    // highest output the dispatch can ask for: the nameplate capacity, unless the current needed at this voltage
+    // would already fail operatingParametersValidation
+    public double getDispatchableCapacity() {
+        return Math.min(maxCapacity, (double) MAX_CURRENT * voltage);
+    }
+
+    public double getMinOutput() {
+        return minOutput;
+    }
+
+    public void setMinOutput(double minOutput) {
+        this.minOutput = minOutput;
+        parametersChanged();
+    }
+
+    public double getCostNoLoad() {
+        return costNoLoad;
+    }
+
+    public double getCostLinear() {
+        return costLinear;
+    }
+
+    public double getCostQuadratic() {
+        return costQuadratic;
+    }
+
+    public void setCostCurve(double costNoLoad, double costLinear, double costQuadratic) {
+        this.costNoLoad = costNoLoad;
+        this.costLinear = costLinear;
+        this.costQuadratic = costQuadratic;
+        parametersChanged();
+    }
+
+    // output the generator is currently set to, W
+    public double getOutput() {
+        return (double) current * voltage;
+    }
+
     public void loadRephase(double powerFactor){
         this.powerFactor = powerFactorCorrected;
         this.activePower = 3 * (this.voltage * this.current * this.powerFactor);
         double newShiftPhaseAngle = Math.toDegrees(Math.acos(this.powerFactor));
         this.reactivePower = 3 * (this.voltage * this.current * Math.sin(newShiftPhaseAngle));
         double capacityPerPhase = this.reactivePower / 3 * 50 * Math.pow(this.voltage/Math.sqrt(3),2);
+        parametersChanged();
 
         // despite unuseful has been calculated the capacitance for each phase. The utility of this calculus comes
         // when in the project might be included a capacitors bank, hence, a group of capacitors are linked to the load
@@ -113,6 +237,23 @@ public class PowerGenerator extends ElectricalComponent {
         // From a "coding" point of view the capacitors linking is a "manual" job, so must be included a method that opens a set of relay so that cpacitor bank is engaged.
     }
 
+    // result of a PowerBatch.loadRephase for this generator
+    void applyRephase(double powerFactor, double activePower, double reactivePower){
+        this.powerFactor = powerFactor;
+        this.activePower = activePower;
+        this.reactivePower = reactivePower;
+        parametersChanged();
+    }
+
+    double getPowerFactorCorrected(){
+        return powerFactorCorrected;
+    }
+
+    // turbine power the efficiency is taken against, for PowerBatch.efficiency
+    double getInputPower(){
+        return Pin;
+    }
+
     public void connectGenToTheLoad(String operatorCommand){
         if (operatorCommand.equals("connect")){
             cb.closeCircuit(this.current);
@@ -134,10 +275,56 @@ public class PowerGenerator extends ElectricalComponent {
 
     public void setCb(CircuitBreaker cb) {
         this.cb = cb;
+        wiringChanged();
     }
 
     public int getExcitationField() {
         return excitationField;
     }
 
+    // measured values coming from the field (SCADA telemetry), NaN = not measured this time
+    public void updateReadings(double voltage, double current, double excitationField){
+        if (!Double.isNaN(voltage)){
+            this.voltage = (int) voltage;
+        }
+        if (!Double.isNaN(current)){
+            this.current = (int) current;
+            this.requiredCurrent = current;
+        }
+        if (!Double.isNaN(excitationField)){
+            this.excitationField = (int) excitationField;
+        }
+        parametersChanged();
+    }
+
+    static final int SNAPSHOT_BYTES = 4 * 3 + 8 * 12;
+
+    @Override
+    void writeParameters(ByteBuffer out) {
+        out.putInt(current).putInt(voltage).putInt(excitationField);
+        out.putDouble(maxCapacity).putDouble(powerFactor).putDouble(powerFactorCorrected).putDouble(Pin);
+        out.putDouble(activePower).putDouble(reactivePower).putDouble(shiftPhaseAngle).putDouble(requiredCurrent);
+        out.putDouble(costNoLoad).putDouble(costLinear).putDouble(costQuadratic).putDouble(minOutput);
+    }
+
+    @Override
+    void readParameters(ByteBuffer in) {
+        current = in.getInt();
+        voltage = in.getInt();
+        excitationField = in.getInt();
+        maxCapacity = in.getDouble();
+        powerFactor = in.getDouble();
+        powerFactorCorrected = in.getDouble();
+        Pin = in.getDouble();
+        activePower = in.getDouble();
+        reactivePower = in.getDouble();
+        shiftPhaseAngle = in.getDouble();
+        requiredCurrent = in.getDouble();
+        costNoLoad = in.getDouble();
+        costLinear = in.getDouble();
+        costQuadratic = in.getDouble();
+        minOutput = in.getDouble();
+        refreshDerived();
+    }
+
 }
@@ -1,13 +1,42 @@
 
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 public class PowerGridController {
-    private Map<String,ElectricalComponent> componentRegistry = new LinkedHashMap<>(); // has been chosen
-    // to keep insertion order
-   private Queue<MantainanceTask> maintainanceQue = new PriorityQueue<>(new comparatorByPriority());
-   private List<PowerGenerator> availableGenerators = new ArrayList<>();
-   private Set<String> faultyComponents = new LinkedHashSet<>(); // because allows null elements, keeps
-    // insertion order
+    // telemetry kept in getTimeSeries(), older points are dropped at midnight (getTimeSeries().setRetention to change)
+    public static final long DEFAULT_TELEMETRY_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private final ComponentRegistry componentRegistry = new ComponentRegistry(); // keeps insertion order like the
+    // old LinkedHashMap, but can be shared between monitoring, maintenance and operator threads and has indexes
+    // by component type and by status
+   private final MaintenanceTaskHeap maintainanceQue = new MaintenanceTaskHeap(); // indexed by taskId, so a
+    // task can be escalated or cancelled in O(log n) while it waits
+    private final MaintenanceCalendar maintenanceCalendar = new MaintenanceCalendar(); // scheduled but not due yet
+    private volatile MaintenanceExecutor concurrentDrain; // holds the tasks during processMantainanceQueConcurrently
+   private final List<PowerGenerator> availableGenerators = Collections.synchronizedList(new ArrayList<>());
+   private Set<String> faultyComponents = Collections.synchronizedSet(new LinkedHashSet<>()); // because allows
+    // null elements, keeps insertion order
+    private final GridIntegrityTracker integrityTracker = new GridIntegrityTracker();
+    private final FleetEfficiency fleetEfficiency = new FleetEfficiency(); // running power/loss totals
+    private static final int MIN_MONITOR_CHUNK = 1024;
+    private volatile int parallelMonitorThreshold = 50_000;
+    private volatile ForkJoinPool monitorPool = ForkJoinPool.commonPool();
+    private volatile GridJournal journal;
+    private final StatusEventBus statusEvents = new StatusEventBus(1 << 16); // pushes every transition to the
+    // subscribed consumers as it happens
+    private volatile StatusEventBus.Subscription faultHandler;
+    private final Object topologyLock = new Object();
+    private volatile GridTopology topology;
+    private volatile boolean topologyDirty = true;
+    private final EconomicDispatch economicDispatch = new EconomicDispatch(this::generatorsSnapshot);
+    private final PowerFlowSolver powerFlowSolver = new PowerFlowSolver(); // keeps its factorization between calls
+    private final TimeSeriesStore timeSeries = new TimeSeriesStore(); // telemetry history, off-heap
+    private final BreakerBank breakerBank = new BreakerBank(componentRegistry); // contact position of every
+    // registered breaker in a bitset, switched by whole sections
+    private volatile ParameterStore parameterStore; // generator and transformer parameters column by column
+    // off-heap, for the fleet-wide scans; null until enableParameterStore
     //protected MantainanceTask scheduledDate;
     protected PowerGenerator genRef;
     protected CircuitBreaker CBRef;
@@ -17,159 +46,445 @@ public class PowerGridController {
         this.transfRef = transfRef;
         this.CBRef = CBRef;
         this.genRef = genRef;
+        timeSeries.setRetention(DEFAULT_TELEMETRY_RETENTION_MILLIS);
+        componentRegistry.addListener(breakerBank);
+        componentRegistry.addListener(integrityTracker);
+        componentRegistry.addListener(fleetEfficiency);
+        componentRegistry.addListener(statusEvents);
+        componentRegistry.addListener(economicDispatch);
+        componentRegistry.addListener(new ComponentListener() {
+            @Override
+            public void componentRegistered(String componentID, ElectricalComponent ec) {
+                topologyDirty = true;
+            }
+
+            @Override
+            public void componentRemoved(String componentID, ElectricalComponent ec) {
+                topologyDirty = true;
+            }
+
+            @Override
+            public void wiringChanged(ElectricalComponent ec) {
+                topologyDirty = true;
+            }
+        });
     }
 
     public void registerComponent(String componentID, ElectricalComponent ec){
-        componentRegistry.putIfAbsent(componentID, ec);
+        if (componentRegistry.register(componentID, ec) && ec instanceof PowerGenerator){
+            availableGenerators.add((PowerGenerator) ec);
+        }
+    }
+
+    // copy taken under the list lock, so the loops do not need to hold it
+    private List<PowerGenerator> generatorsSnapshot(){
+        synchronized (availableGenerators){
+            return new ArrayList<>(availableGenerators);
+        }
     }
 
     public void removeComponent(String componentID){
-        componentRegistry.remove(componentID);
+        ElectricalComponent removed = componentRegistry.unregister(componentID);
+        if (removed instanceof PowerGenerator){
+            availableGenerators.remove(removed);
+        }
     }
 
 
 
     public void processMantainanceQue(){
-        Iterator<MantainanceTask> it = maintainanceQue.iterator();
-        while (it.hasNext()){
-            MantainanceTask currentTask = maintainanceQue.peek();
-            String currentComponent = currentTask.getComponentId();
-            ElectricalComponent actualComp = componentRegistry.get(currentComponent);
-            actualComp.setStatus(PowerComponentStatus.MAINTENANCE);
-            currentTask.executeTask(actualComp);
-            currentTask.updatePriority(4);
-            actualComp.setStatus(PowerComponentStatus.OPERATIONAL);
-            faultyComponents.remove(actualComp);
-            maintainanceQue.remove(currentTask);
+        // poll takes the head in O(log n), before peek + remove(Object) made the whole drain O(n^2)
+        MantainanceTask currentTask;
+        while ((currentTask = maintainanceQue.poll()) != null){
+            performQueuedTask(currentTask);
+        }
+    }
+
+    // same work of processMantainanceQue, but the tasks are spread on a pool of workers: tasks of different
+    // components run in parallel, two tasks of the same component never overlap
+    public void processMantainanceQueConcurrently(int workers){
+        MaintenanceExecutor executor = new MaintenanceExecutor(this, workers);
+        concurrentDrain = executor; // before the tasks move, escalate and cancel look there too
+        MantainanceTask currentTask;
+        while ((currentTask = maintainanceQue.poll()) != null){
+            executor.submit(currentTask);
+        }
+        try {
+            executor.awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrentDrain = null;
+            executor.shutdown();
         }
     }
 
+    void performQueuedTask(MantainanceTask currentTask){
+        String currentComponent = currentTask.getComponentId();
+        ElectricalComponent actualComp = componentRegistry.get(currentComponent);
+        actualComp.setStatus(PowerComponentStatus.MAINTENANCE);
+        currentTask.executeTask(actualComp);
+        currentTask.updatePriority(4);
+        actualComp.setStatus(PowerComponentStatus.OPERATIONAL);
+        faultyComponents.remove(currentComponent); // the set holds ids, not components
+        componentRegistry.maintenanceCompleted(currentTask, actualComp);
+    }
+
     public void monitorGridStatus(){
-        boolean genBroken = false;
-        for (Map.Entry<String, ElectricalComponent> entry : componentRegistry.entrySet()){
-            var component = entry.getValue();
+        // only generators are checked, then what is fed by the broken ones (their breakers, transformers and the
+        // breakers below them) is isolated through the topology graph. Before, every transformer and breaker
+        // registered after the first broken generator was isolated, even the ones fed by healthy generators
+        long start = System.nanoTime();
+        GridEvents.MonitorSweep event = new GridEvents.MonitorSweep();
+        event.begin();
+        ElectricalComponent[] generators = componentRegistry.ofType(ComponentType.GENERATOR).toArray(new ElectricalComponent[0]);
+        boolean parallel = generators.length >= parallelMonitorThreshold;
+        int faults = parallel ? monitorGridStatusParallel(generators) : monitorGridStatusSequential(generators);
+        GridMetrics metrics = GridMetrics.shared();
+        metrics.add(GridMetrics.Counter.FAULTS_DETECTED, faults);
+        metrics.recordSince(GridMetrics.Timer.MONITOR_SWEEP, start);
+        event.end();
+        if (event.shouldCommit()){
+            event.generators = generators.length;
+            event.faults = faults;
+            event.parallel = parallel;
+            event.commit();
+        }
+    }
+
+    // returns the number of broken generators found
+    private int monitorGridStatusSequential(ElectricalComponent[] generators){
+        List<ElectricalComponent> broken = new ArrayList<>();
+        for (ElectricalComponent component : generators){
             if (component instanceof PowerGenerator){
                 int excitationField = ((PowerGenerator) component).getExcitationField();
                     if (excitationField < 10){
                         // java is not quite clever to change type from electrical Component to Power Generator,
                         // so this procedure requires a manual action (casting). Same as circuitBreaker
                         component.setStatus(PowerComponentStatus.FAULT);
-                        genBroken = true;
-                        faultyComponents.add(entry.getKey());
+                        broken.add(component);
+                        faultyComponents.add(componentRegistry.keyOf(component));
                         //executeTaskRef.executeTask(entry.getValue());
                     }
             }
-            if (component instanceof Transformer){
-                if (genBroken){
-                    component.setStatus(PowerComponentStatus.OFFLINE);
-                }
-            }
-            if (component instanceof CircuitBreaker){
-                if (genBroken){
-                    CircuitBreaker cb = (CircuitBreaker) component;
-                    cb.openCircuit();
-                }
-            }
+        }
+        if (!broken.isEmpty()){
+            getTopology().isolateDownstream(broken.toArray(new ElectricalComponent[0]), broken.size());
+        }
+        return broken.size();
+    }
+
+    // 1st phase runs on the fork/join pool and only marks the broken generators, 2nd phase (faulty list and
+    // downstream isolation) runs on the caller thread in registry order, so the outcome is the same as the
+    // sequential sweep whatever the thread scheduling
+    private int monitorGridStatusParallel(ElectricalComponent[] generators){
+        int chunkSize = Math.max(MIN_MONITOR_CHUNK, generators.length / (monitorPool.getParallelism() * 4));
+        GeneratorSweepTask.Result result = monitorPool.invoke(
+                new GeneratorSweepTask(generators, 0, generators.length, chunkSize));
+        if (result.size() == 0){
+            return 0;
+        }
+        ElectricalComponent[] broken = new ElectricalComponent[result.size()];
+        for (int i = 0; i < result.size(); i++){
+            broken[i] = generators[result.position(i)];
+            faultyComponents.add(componentRegistry.keyOf(broken[i]));
+        }
+        getTopology().isolateDownstream(broken, broken.length);
+        return broken.length;
+    }
 
+    // built again only after components were added/removed or rewired, otherwise the same graph serves every sweep
+    public GridTopology getTopology(){
+        GridTopology current = topology;
+        if (current != null && !topologyDirty){
+            return current;
+        }
+        synchronized (topologyLock){
+            if (topology == null || topologyDirty){
+                topologyDirty = false; // cleared before the build, a change during the build asks for another one
+                topology = GridTopology.build(componentRegistry);
+            }
+            return topology;
         }
     }
 
-// unuseful, only 1 generator exists for now
+    // grids with less generators than the threshold stay on the sequential sweep, forking is not worth it there
+    public void setParallelMonitorThreshold(int parallelMonitorThreshold){
+        this.parallelMonitorThreshold = parallelMonitorThreshold;
+    }
+
+    public void setMonitorPool(ForkJoinPool monitorPool){
+        this.monitorPool = monitorPool;
+    }
+
+    // splits the demand (W) between the operational generators at the least cost, see EconomicDispatch. Returns the
+    // system marginal cost; when a generator trips only the units near the margin are moved at the next call
+    public double balanceLoad(double demand){
+        return economicDispatch.dispatch(demand);
+    }
+
+    // last demand again, e.g. right after a trip
+    public double rebalanceLoad(){
+        return economicDispatch.redispatch();
+    }
+
+    public EconomicDispatch getEconomicDispatch() {
+        return economicDispatch;
+    }
+
+    // network solution with the generators at their present output and the demand (W) on the substation busbar.
+    // Results are read on getPowerFlowSolver() through the bus numbers of the returned mapping
+    public PowerFlowNetwork.GridMapping solvePowerFlow(double demand, boolean ac){
+        PowerFlowNetwork.GridMapping mapping = PowerFlowNetwork.fromGrid(componentRegistry, demand);
+        synchronized (powerFlowSolver){
+            if (ac){
+                powerFlowSolver.solveAc(mapping.network, 1e-6, 20);
+            }
+            else {
+                powerFlowSolver.solveDc(mapping.network);
+            }
+        }
+        return mapping;
+    }
 
-//    public void balanceLoad(){
-//        double currentFromGen = 0;
-//        double maxCapacity = 0;
-//        double totMaxCapacity = 5*maxCapacity;
-//        if (electricalComponentRef.status.equals(PowerComponentStatus.OPERATIONAL)){
-//            currentFromGen = electricalComponentRef.current;
-//            maxCapacity = pGenRef.getMaxCapacity();
-//            double genShare = maxCapacity/totMaxCapacity * currentFromGen;
-//        }
-//    }
+    public PowerFlowSolver getPowerFlowSolver() {
+        return powerFlowSolver;
+    }
 
     public void handleEmergencyShutDown(){
-        for (PowerGenerator gen : availableGenerators){
-            gen.stopGenerator("off");
-            gen.updateStatus(PowerComponentStatus.OFFLINE);
+        long start = System.nanoTime();
+        GridEvents.EmergencyShutdown event = new GridEvents.EmergencyShutdown();
+        event.begin();
+        // first the load is disconnected: every registered breaker opens in one pass over the bank bitset and the
+        // listeners get a single event. Before, CBRef (the controller breaker, not the registered ones) was opened
+        // once per breaker, printing each time, and only after the generators were stopped
+        breakerBank.openAll();
+        if (CBRef != null && CBRef.bank() != breakerBank){
+            CBRef.openCircuit();
         }
 
-        for (Map.Entry<String, ElectricalComponent> entry : componentRegistry.entrySet()){
-            if (entry.getValue() instanceof CircuitBreaker){
-                CBRef.openCircuit();
-            }
+        for (PowerGenerator gen : generatorsSnapshot()){
+            gen.stopGenerator("off");
+            gen.updateStatus(PowerComponentStatus.OFFLINE);
         }
 
-        for (Map.Entry<String, ElectricalComponent> entry : componentRegistry.entrySet()){
-            entry.getValue().setStatus(PowerComponentStatus.OFFLINE);
+        for (ElectricalComponent ec : componentRegistry.values()){
+            ec.setStatus(PowerComponentStatus.OFFLINE);
         }
         // now every componet is offline, this does not mean if turned on can be operational. If was broken
         // at the moment of emergency, remains broken.
         //faultyComponents.clear();
+        GridMetrics metrics = GridMetrics.shared();
+        metrics.increment(GridMetrics.Counter.EMERGENCY_SHUTDOWNS);
+        metrics.recordSince(GridMetrics.Timer.EMERGENCY_SHUTDOWN, start);
+        event.end();
+        if (event.shouldCommit()){
+            event.components = componentRegistry.size();
+            event.commit();
+        }
     }
 
-    private boolean validateGridIntegrity(){
-        boolean integrityStatus = true;
-        for (Map.Entry<String, ElectricalComponent> entry : componentRegistry.entrySet()){
-            ElectricalComponent ec = entry.getValue();
+    // streams SCADA readings (a TelemetryReplay, a TelemetryFeed...) into the registered components, with at most
+    // window batches in flight; the readings are kept in getTimeSeries()
+    public TelemetryIngestor ingestTelemetry(Flow.Publisher<TelemetryBatch> source, int window){
+        TelemetryIngestor ingestor = new TelemetryIngestor(componentRegistry, window);
+        ingestor.setHistory(timeSeries);
+        source.subscribe(ingestor);
+        return ingestor;
+    }
+
+    public TimeSeriesStore getTimeSeries() {
+        return timeSeries;
+    }
+
+    public BreakerBank getBreakerBank() {
+        return breakerBank;
+    }
+
+    // null unless enableParameterStore was called
+    public ParameterStore getParameterStore() {
+        return parameterStore;
+    }
+
+    // starts the column copy, with the generators and transformers already registered; from then on each of their
+    // changes is written twice. Calling it again returns the same store
+    public synchronized ParameterStore enableParameterStore() {
+        ParameterStore store = parameterStore;
+        if (store == null) {
+            store = new ParameterStore();
+            componentRegistry.addListener(store); // first, so no registration falls between the two
+            store.attachRegistered(componentRegistry.ofType(ComponentType.GENERATOR));
+            store.attachRegistered(componentRegistry.ofType(ComponentType.TRANSFORMER));
+            parameterStore = store;
+        }
+        return store;
+    }
+
+    // latencies and counters of the grid operations (monitor sweeps, trips, maintenance, emergency shutdowns)
+    public GridMetrics.Snapshot getMetrics(){
+        return GridMetrics.shared().snapshot();
+    }
+
+    // constant time: the tracker counters are updated at every status transition and parameter change, so this can
+    // be called at every telemetry tick
+    public boolean validateGridIntegrity(){
+        return integrityTracker.isGridIntact();
+    }
+
+    // full rescan of the grid, kept for consistency audits. The counters of the tracker are rebuilt as well, so a
+    // difference between the two verdicts is fixed after the audit
+    public boolean auditGridIntegrity(){
+        integrityTracker.resync(componentRegistry);
+        for (ElectricalComponent ec : componentRegistry.values()){
             if (!ec.operatingParametersValidation()){
-                integrityStatus = false;
-                return integrityStatus;
-            }
-            PowerComponentStatus componentStatus = ec.getStatus();
-            if (componentStatus.equals(PowerComponentStatus.FAULT) ||
-                    componentStatus.equals(PowerComponentStatus.OFFLINE)){
-                integrityStatus = false;
+                return false;
             }
         }
+        // status index answers directly, no need to look at every component
+        if (componentRegistry.hasStatus(PowerComponentStatus.FAULT) ||
+                componentRegistry.hasStatus(PowerComponentStatus.OFFLINE)){
+            return false;
+        }
 
         // despite generator is only one the loop is made with prospective of adding more of them.
         int operationalGeneratorsCount = 0;
-        for (PowerGenerator gen : availableGenerators){
+        for (PowerGenerator gen : generatorsSnapshot()){
             PowerComponentStatus genStatus = gen.getStatus();
             if (genStatus.equals(PowerComponentStatus.OPERATIONAL)){
                 operationalGeneratorsCount++;
             }
         }
         if (operationalGeneratorsCount == 0){
-            integrityStatus = false;
+            return false;
         }
 
-        boolean hasOperationalTransformer = false;
-        boolean hasOperationalCircuitBreaker = false;
+        return hasOperational(ComponentType.TRANSFORMER) && hasOperational(ComponentType.CIRCUIT_BREAKER);
+    }
 
-        for (Map.Entry<String, ElectricalComponent> entry : componentRegistry.entrySet()){
-            ElectricalComponent transformer = null;
-            ElectricalComponent ec = entry.getValue();
-            if (ec instanceof Transformer){
-                transformer = ec;
-                PowerComponentStatus ecStatus = ec.getStatus();
-                if (ecStatus.equals(PowerComponentStatus.OPERATIONAL)){
-                    hasOperationalTransformer = true;
-                }
+    private boolean hasOperational(ComponentType type){
+        for (ElectricalComponent ec : componentRegistry.ofType(type)){
+            if (ec.getStatus().equals(PowerComponentStatus.OPERATIONAL)){
+                return true;
             }
         }
-        for (Map.Entry<String, ElectricalComponent> entry : componentRegistry.entrySet()){
-            ElectricalComponent circuitBreaker = null;
-            ElectricalComponent cb = entry.getValue();
-            if (cb instanceof CircuitBreaker){
-                circuitBreaker = cb;
-                PowerComponentStatus cbStatus = cb.getStatus();
-                if (cbStatus.equals(PowerComponentStatus.OPERATIONAL)){
-                    hasOperationalCircuitBreaker = true;
+        return false;
+    }
+
+    public ComponentRegistry getComponentRegistry() {
+        return componentRegistry;
+    }
+
+    // from now on every status change, breaker switch and completed maintenance is written in the journal
+    public void attachJournal(GridJournal journal){
+        GridJournal previous = this.journal;
+        if (previous != null){
+            componentRegistry.removeListener(previous);
+        }
+        this.journal = journal;
+        componentRegistry.addListener(journal);
+    }
+
+    public GridJournal getJournal() {
+        return journal;
+    }
+
+    public StatusEventBus getStatusEvents() {
+        return statusEvents;
+    }
+
+    // faults are collected when they happen (whoever sets them: telemetry, breaker trips, operators) instead of
+    // waiting for the next monitorGridStatus
+    public synchronized void startFaultHandler(){
+        if (faultHandler != null){
+            return;
+        }
+        faultHandler = statusEvents.subscribe("fault-handler", (ec, oldStatus, newStatus, nanoTime, sequence, endOfBatch) -> {
+            if (newStatus == PowerComponentStatus.FAULT){
+                String key = componentRegistry.keyOf(ec);
+                if (key != null){
+                    faultyComponents.add(key);
                 }
             }
+        });
+    }
+
+    public synchronized void stopFaultHandler(){
+        if (faultHandler != null){
+            faultHandler.close();
+            faultHandler = null;
         }
-        if (hasOperationalTransformer == false || hasOperationalCircuitBreaker == false){
-            integrityStatus = false;
+    }
+
+    public GridIntegrityTracker getIntegrityTracker() {
+        return integrityTracker;
+    }
+
+    // generated power, losses and efficiency distribution per type, from the running totals (no walk of the grid)
+    public FleetEfficiency.Report getFleetEfficiency() {
+        return fleetEfficiency.report();
+    }
+
+    // same figures recomputed from every registered component, in parallel on the monitor pool
+    public FleetEfficiency.Report computeFleetEfficiency() {
+        return FleetEfficiency.compute(componentRegistry.values(), monitorPool);
+    }
+
+    // computes the scheduled date of the task and files it in the calendar, the task reaches the maintenance queue
+    // only when releaseDueMaintenance is called on (or after) that date. A task for a component not registered is
+    // refused with IllegalArgumentException
+    public void scheduleMaintenance(MantainanceTask task){
+        ElectricalComponent ec = componentRegistry.get(task.getComponentId());
+        if (ec == null){
+            throw new IllegalArgumentException("component " + task.getComponentId() + " is not registered");
         }
-        return integrityStatus;
+        task.scheduleMantainanceTask(task.getComponentId(), task.getTaskType(), ec);
+        maintenanceCalendar.add(task, ec.componentType);
     }
 
-    public Map<String, ElectricalComponent> getComponentRegistry() {
-        return componentRegistry;
+    // daily roll forward of the calendar, returns how many tasks went in the maintenance queue
+    public int releaseDueMaintenance(LocalDate today){
+        return maintenanceCalendar.rollForward(today, maintainanceQue);
+    }
+
+    public MaintenanceCalendar getMaintenanceCalendar() {
+        return maintenanceCalendar;
+    }
+
+    // routine operation driven by the clock (a SimulationEngine to run months in seconds): grid monitoring every
+    // monitorPeriod, and at every midnight the due maintenance is released and carried out, the telemetry history
+    // past its retention is dropped and the fleet efficiency totals are measured again. Cancelling the returned timer
+    // stops both
+    public GridClock.Timer scheduleOperations(GridClock clock, long monitorPeriod, TimeUnit unit){
+        GridClock.Timer monitor = clock.scheduleAtFixedRate(this::monitorGridStatus, monitorPeriod, monitorPeriod, unit);
+        long day = TimeUnit.DAYS.toMillis(1);
+        long toMidnight = day - Math.floorMod(clock.currentTimeMillis(), day);
+        GridClock.Timer maintenance = clock.scheduleAtFixedRate(() -> {
+            releaseDueMaintenance(clock.today());
+            processMantainanceQue();
+            timeSeries.applyRetention(clock.currentTimeMillis()); // series that stopped receiving data
+            fleetEfficiency.resync(); // rounding of the running sums
+        }, toMidnight, day, TimeUnit.MILLISECONDS);
+        return () -> monitor.cancel() | maintenance.cancel();
+    }
+
+    // EMERGENCY escalation takes effect immediately, the task is moved in the queue
+    public boolean escalateMaintenanceTask(String taskId, int priority){
+        if (maintainanceQue.changePriority(taskId, priority)){
+            return true;
+        }
+        MaintenanceExecutor drain = concurrentDrain;
+        return drain != null && drain.changePriority(taskId, priority);
+    }
+
+    public boolean cancelMaintenanceTask(String taskId){
+        if (maintainanceQue.cancel(taskId)){
+            return true;
+        }
+        MaintenanceExecutor drain = concurrentDrain;
+        return drain != null && drain.cancel(taskId);
     }
 
-    public Queue<MantainanceTask> getMaintainanceQue() {
+    public MaintenanceTaskHeap getMaintainanceQue() {
         return maintainanceQue;
     }
 
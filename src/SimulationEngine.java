@@ -0,0 +1,147 @@
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// discrete event engine: virtual time only moves when the next event is taken from the queue, so nothing ever
+// sleeps. Events with the same time run in the order they were scheduled, everything runs on the thread calling
+// run/step, and the random numbers come from the seed: the same seed and the same scenario give the same run.
+//
+//     SimulationEngine engine = new SimulationEngine(LocalDate.of(2024, 1, 1), 42);
+//     GridClock previous = GridClock.install(engine);
+//     controller.scheduleOperations(engine, 15, TimeUnit.MINUTES);
+//     engine.runFor(180, TimeUnit.DAYS);
+//     GridClock.install(previous);
+public class SimulationEngine extends GridClock {
+
+    private static final class Event implements Timer, Comparable<Event> {
+        final long time;
+        final long sequence;
+        final Runnable action;
+        boolean cancelled;
+        boolean done;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return time != other.time ? Long.compare(time, other.time) : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (this) {
+                if (done || cancelled) {
+                    return false;
+                }
+                cancelled = true;
+                return true;
+            }
+        }
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final Random random;
+    private long now;
+    private long sequence;
+    private long processed;
+
+    public SimulationEngine(LocalDate start, long seed) {
+        this.now = start.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public synchronized Timer schedule(Runnable action, long delay, TimeUnit unit) {
+        Event event = new Event(now + Math.max(0, unit.toMillis(delay)), sequence++, action);
+        events.add(event);
+        return event;
+    }
+
+    // runs the next event, false when there is none left
+    public boolean step() {
+        Event event;
+        synchronized (this) {
+            do {
+                event = events.poll();
+            } while (event != null && event.cancelled);
+            if (event == null) {
+                return false;
+            }
+            now = event.time;
+            processed++;
+        }
+        synchronized (event) {
+            if (event.cancelled) {
+                return true;
+            }
+            event.done = true;
+        }
+        event.action.run();
+        return true;
+    }
+
+    // runs every event up to the given virtual time (included), then sets the clock there
+    public void runUntil(long timeMillis) {
+        while (true) {
+            synchronized (this) {
+                Event next = events.peek();
+                if (next == null || next.time > timeMillis) {
+                    now = Math.max(now, timeMillis);
+                    return;
+                }
+            }
+            step();
+        }
+    }
+
+    public void runFor(long duration, TimeUnit unit) {
+        runUntil(currentTimeMillis() + unit.toMillis(duration));
+    }
+
+    // runs until nothing is scheduled anymore (never returns if something reschedules itself forever)
+    public void runAll() {
+        while (step()) {
+        }
+    }
+
+    // the future is completed by a scheduled event: events are run (from inside the current one if needed) until it is
+    @Override
+    public <T> T await(CompletableFuture<T> future) throws InterruptedException, ExecutionException {
+        while (!future.isDone()) {
+            if (!step()) {
+                throw new IllegalStateException("no scheduled event left that could complete the future");
+            }
+        }
+        return future.get();
+    }
+
+    @Override
+    public synchronized double nextRandom() {
+        return random.nextDouble();
+    }
+
+    public synchronized Random getRandom() {
+        return random;
+    }
+
+    public synchronized long getProcessedEvents() {
+        return processed;
+    }
+
+    public synchronized int getPendingEvents() {
+        return events.size();
+    }
+}
@@ -0,0 +1,355 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// sparse LU for the power flow matrices. They have the structurally symmetric pattern of the bus graph (one scalar per
+// bus for the DC matrix, a 2x2 block per bus for the Newton-Raphson Jacobian), and in power flow they are factorized
+// without pivoting, so the whole structure can be worked out once:
+//   symbolic  minimum degree ordering of the buses and fill-in pattern of L and U, plus where every entry of the
+//             input matrix goes in the factor
+//   numeric   row by row elimination on that pattern, run for every new set of values (every Newton iteration,
+//             every load change, every breaker opening as long as the branch stays in the pattern)
+// L (unit diagonal) and U share one row compressed storage: in a row the columns below the diagonal belong to L,
+// the others to U.
+public class SparseLU {
+    private final int buses;
+    private final int blockSize;
+    private final int size;
+
+    // input pattern (bus level, rows with sorted columns, diagonal included), kept to recognise the same structure
+    private final int[] patternRows;
+    private final int[] patternColumns;
+
+    private final int[] order;    // variable -> position in the factor
+    private final int[] inverse;  // position -> variable
+    private final int[] rows;     // factor rows, in position space
+    private final int[] columns;
+    private final int[] diagonal; // index of the diagonal entry of each row
+    private final int[] scatter;  // input scalar entry -> index in values
+    private final double[] values;
+    private final double[] work;
+
+    private SparseLU(int buses, int blockSize, int[] patternRows, int[] patternColumns, int[] order, int[] rows,
+                     int[] columns, int[] scatter) {
+        this.buses = buses;
+        this.blockSize = blockSize;
+        this.size = buses * blockSize;
+        this.patternRows = patternRows;
+        this.patternColumns = patternColumns;
+        this.order = order;
+        this.inverse = new int[size];
+        for (int v = 0; v < size; v++) {
+            inverse[order[v]] = v;
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.scatter = scatter;
+        this.diagonal = new int[size];
+        for (int i = 0; i < size; i++) {
+            diagonal[i] = Arrays.binarySearch(columns, rows[i], rows[i + 1], i);
+        }
+        this.values = new double[columns.length];
+        this.work = new double[size];
+    }
+
+    // pattern: bus rows with sorted columns, diagonal included, symmetric. Input matrices are given on the same
+    // pattern, blockSize * blockSize values per entry (row major inside the block)
+    public static SparseLU symbolic(int buses, int[] patternRows, int[] patternColumns, int blockSize) {
+        int[][] eliminated = new int[buses][]; // neighbours still present when the bus was eliminated
+        int[] busPosition = minimumDegree(buses, patternRows, patternColumns, eliminated);
+
+        // bus level pattern of each factor row: upper part from the elimination, lower part is its transpose
+        int[] lowerCount = new int[buses];
+        for (int b = 0; b < buses; b++) {
+            for (int c : eliminated[b]) {
+                lowerCount[c]++;
+            }
+        }
+        int[][] lower = new int[buses][];
+        for (int b = 0; b < buses; b++) {
+            lower[b] = new int[lowerCount[b]];
+            lowerCount[b] = 0;
+        }
+        for (int b = 0; b < buses; b++) {
+            for (int c : eliminated[b]) {
+                lower[c][lowerCount[c]++] = b;
+            }
+        }
+
+        // expand to scalars: variable (bus, s) sits at position busPosition * blockSize + s
+        int size = buses * blockSize;
+        int[] order = new int[size];
+        for (int b = 0; b < buses; b++) {
+            for (int s = 0; s < blockSize; s++) {
+                order[b * blockSize + s] = busPosition[b] * blockSize + s;
+            }
+        }
+        int[] busAt = new int[buses];
+        for (int b = 0; b < buses; b++) {
+            busAt[busPosition[b]] = b;
+        }
+        int[] rows = new int[size + 1];
+        for (int p = 0; p < buses; p++) {
+            int b = busAt[p];
+            int width = (lower[b].length + 1 + eliminated[b].length) * blockSize;
+            for (int s = 0; s < blockSize; s++) {
+                rows[p * blockSize + s + 1] = width;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            rows[i + 1] += rows[i];
+        }
+        int[] columns = new int[rows[size]];
+        int[] neighbours = new int[0];
+        for (int p = 0; p < buses; p++) {
+            int b = busAt[p];
+            int count = lower[b].length + 1 + eliminated[b].length;
+            if (neighbours.length < count) {
+                neighbours = new int[count];
+            }
+            int k = 0;
+            for (int c : lower[b]) {
+                neighbours[k++] = busPosition[c];
+            }
+            neighbours[k++] = p;
+            for (int c : eliminated[b]) {
+                neighbours[k++] = busPosition[c];
+            }
+            Arrays.sort(neighbours, 0, count);
+            for (int s = 0; s < blockSize; s++) {
+                int at = rows[p * blockSize + s];
+                for (int j = 0; j < count; j++) {
+                    for (int t = 0; t < blockSize; t++) {
+                        columns[at++] = neighbours[j] * blockSize + t;
+                    }
+                }
+            }
+        }
+
+        // where every input scalar lands in the factor storage
+        int entries = patternColumns.length;
+        int[] scatter = new int[entries * blockSize * blockSize];
+        for (int b = 0; b < buses; b++) {
+            for (int e = patternRows[b]; e < patternRows[b + 1]; e++) {
+                int c = patternColumns[e];
+                for (int s = 0; s < blockSize; s++) {
+                    int row = order[b * blockSize + s];
+                    for (int t = 0; t < blockSize; t++) {
+                        int column = order[c * blockSize + t];
+                        scatter[(e * blockSize + s) * blockSize + t] =
+                                Arrays.binarySearch(columns, rows[row], rows[row + 1], column);
+                    }
+                }
+            }
+        }
+        return new SparseLU(buses, blockSize, patternRows.clone(), patternColumns.clone(), order, rows, columns,
+                scatter);
+    }
+
+    // minimum degree on the elimination graph, ties broken by bus number so the ordering is reproducible.
+    // Returns bus -> position and fills, for every bus, the neighbours it had when eliminated
+    private static int[] minimumDegree(int buses, int[] patternRows, int[] patternColumns, int[][] eliminated) {
+        List<IntSet> graph = new ArrayList<>(buses);
+        for (int b = 0; b < buses; b++) {
+            IntSet neighbours = new IntSet();
+            for (int e = patternRows[b]; e < patternRows[b + 1]; e++) {
+                if (patternColumns[e] != b) {
+                    neighbours.add(patternColumns[e]);
+                }
+            }
+            graph.add(neighbours);
+        }
+        PriorityQueue<long[]> queue = new PriorityQueue<>(Math.max(1, buses),
+                (x, y) -> x[0] != y[0] ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]));
+        for (int b = 0; b < buses; b++) {
+            queue.add(new long[]{graph.get(b).size(), b});
+        }
+        boolean[] done = new boolean[buses];
+        int[] position = new int[buses];
+        int next = 0;
+        while (!queue.isEmpty()) {
+            long[] head = queue.poll();
+            int b = (int) head[1];
+            if (done[b] || head[0] != graph.get(b).size()) {
+                continue; // stale entry, the degree changed after it was queued
+            }
+            done[b] = true;
+            position[b] = next++;
+            int[] neighbours = graph.get(b).toArray();
+            eliminated[b] = neighbours;
+            for (int u : neighbours) {
+                IntSet set = graph.get(u);
+                set.remove(b);
+                for (int w : neighbours) {
+                    if (w != u) {
+                        set.add(w);
+                    }
+                }
+            }
+            for (int u : neighbours) {
+                queue.add(new long[]{graph.get(u).size(), u});
+            }
+            graph.set(b, null);
+        }
+        return position;
+    }
+
+    // true if the factor was built for exactly this pattern, so it can be refactorized with new values
+    public boolean matches(int buses, int[] patternRows, int[] patternColumns, int blockSize) {
+        return this.buses == buses && this.blockSize == blockSize
+                && Arrays.equals(this.patternRows, patternRows) && Arrays.equals(this.patternColumns, patternColumns);
+    }
+
+    // input values laid out like the pattern given to symbolic. Throws ArithmeticException on a zero pivot
+    public void factor(double[] matrix) {
+        Arrays.fill(values, 0);
+        for (int k = 0; k < scatter.length; k++) {
+            values[scatter[k]] += matrix[k];
+        }
+        for (int i = 0; i < size; i++) {
+            int start = rows[i];
+            int end = rows[i + 1];
+            for (int k = start; k < end; k++) {
+                work[columns[k]] = values[k];
+            }
+            for (int k = start; k < diagonal[i]; k++) {
+                int j = columns[k];
+                double pivot = values[diagonal[j]];
+                double l = work[j] / pivot;
+                work[j] = l;
+                if (l != 0) {
+                    for (int m = diagonal[j] + 1; m < rows[j + 1]; m++) {
+                        work[columns[m]] -= l * values[m];
+                    }
+                }
+            }
+            for (int k = start; k < end; k++) {
+                values[k] = work[columns[k]];
+                work[columns[k]] = 0;
+            }
+            if (values[diagonal[i]] == 0) {
+                throw new ArithmeticException("zero pivot at variable " + inverse[i]);
+            }
+        }
+    }
+
+    // solves A x = rhs with the last factorization, rhs is overwritten with x
+    public void solve(double[] rhs) {
+        for (int v = 0; v < size; v++) {
+            work[order[v]] = rhs[v];
+        }
+        for (int i = 0; i < size; i++) {
+            double sum = work[i];
+            for (int k = rows[i]; k < diagonal[i]; k++) {
+                sum -= values[k] * work[columns[k]];
+            }
+            work[i] = sum;
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            double sum = work[i];
+            for (int k = diagonal[i] + 1; k < rows[i + 1]; k++) {
+                sum -= values[k] * work[columns[k]];
+            }
+            work[i] = sum / values[diagonal[i]];
+        }
+        for (int v = 0; v < size; v++) {
+            rhs[v] = work[order[v]];
+            work[order[v]] = 0;
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // entries of L and U together, the fill-in is this minus the entries of the input
+    public int getFactorEntries() {
+        return columns.length;
+    }
+
+    // small open addressing set of ints, the elimination graph needs many of them
+    private static final class IntSet {
+        private static final int EMPTY = -1;
+        private static final int REMOVED = -2;
+        private int[] slots = new int[8];
+        private int size;
+        private int used;
+
+        IntSet() {
+            Arrays.fill(slots, EMPTY);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(int value) {
+            if ((used + 1) * 2 > slots.length) {
+                rehash(size * 4 + 8);
+            }
+            int mask = slots.length - 1;
+            int at = mix(value) & mask;
+            int free = -1;
+            while (slots[at] != EMPTY) {
+                if (slots[at] == value) {
+                    return;
+                }
+                if (slots[at] == REMOVED && free < 0) {
+                    free = at;
+                }
+                at = (at + 1) & mask;
+            }
+            if (free >= 0) {
+                slots[free] = value;
+            }
+            else {
+                slots[at] = value;
+                used++;
+            }
+            size++;
+        }
+
+        void remove(int value) {
+            int mask = slots.length - 1;
+            int at = mix(value) & mask;
+            while (slots[at] != EMPTY) {
+                if (slots[at] == value) {
+                    slots[at] = REMOVED;
+                    size--;
+                    return;
+                }
+                at = (at + 1) & mask;
+            }
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            int k = 0;
+            for (int value : slots) {
+                if (value >= 0) {
+                    result[k++] = value;
+                }
+            }
+            return result;
+        }
+
+        private void rehash(int capacity) {
+            int[] old = slots;
+            slots = new int[Integer.highestOneBit(Math.max(8, capacity) - 1) << 1];
+            Arrays.fill(slots, EMPTY);
+            size = 0;
+            used = 0;
+            for (int value : old) {
+                if (value >= 0) {
+                    add(value);
+                }
+            }
+        }
+
+        private static int mix(int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
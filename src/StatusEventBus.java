@@ -0,0 +1,159 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// push channel for the status transitions, so that fault handling, UI, journaling and alarms do not have to wait for
+// the next monitorGridStatus. Events live in a ring buffer allocated once (parallel arrays, nothing is created per
+// event). Every producer claims its own sequence and is the only writer of that slot, then publishes it; every
+// consumer runs on its own thread, follows the sequence and handles all the events already published in one batch.
+// Producers never wait: a consumer that falls more than a ring behind loses the overwritten events and is told how
+// many through onEventsLost.
+public class StatusEventBus implements ComponentListener {
+
+    public interface Handler {
+        void onStatusEvent(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus,
+                           long nanoTime, long sequence, boolean endOfBatch);
+
+        default void onEventsLost(long count) {
+        }
+    }
+
+    private static final PowerComponentStatus[] STATUSES = PowerComponentStatus.values();
+
+    private final int mask;
+    private final ElectricalComponent[] components;
+    private final byte[] oldStatuses;
+    private final byte[] newStatuses;
+    private final long[] nanoTimes;
+    // sequence held by each slot: the slot can be read when it equals the sequence wanted, it is negative while a
+    // producer is writing it (seqlock)
+    private final AtomicLongArray published;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    public StatusEventBus(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        }
+        mask = capacity - 1;
+        components = new ElectricalComponent[capacity];
+        oldStatuses = new byte[capacity];
+        newStatuses = new byte[capacity];
+        nanoTimes = new long[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    @Override
+    public void statusChanged(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus) {
+        publish(ec, oldStatus, newStatus);
+    }
+
+    public long publish(ElectricalComponent ec, PowerComponentStatus oldStatus, PowerComponentStatus newStatus) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        published.set(slot, -1 - sequence); // readers of the old event in this slot will notice the overwrite
+        VarHandle.storeStoreFence();
+        components[slot] = ec;
+        oldStatuses[slot] = (byte) oldStatus.ordinal();
+        newStatuses[slot] = (byte) newStatus.ordinal();
+        nanoTimes[slot] = System.nanoTime();
+        published.set(slot, sequence);
+        return sequence;
+    }
+
+    // the consumer starts with the next event published
+    public Subscription subscribe(String name, Handler handler) {
+        Subscription subscription = new Subscription(handler, nextSequence.get());
+        Thread thread = new Thread(subscription, "status-bus-" + name);
+        thread.setDaemon(true);
+        subscription.thread = thread;
+        thread.start();
+        return subscription;
+    }
+
+    public long getPublishedCount() {
+        return nextSequence.get();
+    }
+
+    public final class Subscription implements Runnable {
+        private final Handler handler;
+        private volatile long sequence; // next event to handle
+        private volatile boolean running = true;
+        private final AtomicLong lost = new AtomicLong();
+        private Thread thread;
+
+        Subscription(Handler handler, long start) {
+            this.handler = handler;
+            this.sequence = start;
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            long next = sequence;
+            while (running) {
+                long end = nextSequence.get(); // events claimed so far, the batch cannot go past it
+                int handled = 0;
+                while (next < end) {
+                    int slot = (int) (next & mask);
+                    long seen = published.get(slot);
+                    if (seen >= 0 ? seen < next : seen >= -1 - next) {
+                        break; // slot still holds the previous lap, or this event is being written: wait for it
+                    }
+                    if (seen == next) {
+                        ElectricalComponent ec = components[slot];
+                        byte oldStatus = oldStatuses[slot];
+                        byte newStatus = newStatuses[slot];
+                        long nanoTime = nanoTimes[slot];
+                        VarHandle.acquireFence();
+                        if (published.get(slot) == next) { // not overwritten while reading
+                            handler.onStatusEvent(ec, STATUSES[oldStatus], STATUSES[newStatus], nanoTime, next,
+                                    next + 1 == end);
+                            next++;
+                            handled++;
+                            continue;
+                        }
+                    }
+                    // a producer one lap ahead took the slot: jump to the oldest event still in the ring
+                    long oldest = Math.max(next + 1, nextSequence.get() - mask);
+                    lost.addAndGet(oldest - next);
+                    handler.onEventsLost(oldest - next);
+                    next = oldest;
+                    end = Math.max(end, next);
+                }
+                sequence = next;
+                if (handled > 0) {
+                    idle = 0;
+                }
+                else if (++idle < 100) {
+                    Thread.onSpinWait();
+                }
+                else if (idle < 200) {
+                    Thread.yield();
+                }
+                else {
+                    LockSupport.parkNanos(50_000);
+                }
+            }
+        }
+
+        public long getLostEvents() {
+            return lost.get();
+        }
+
+        // how many published events this consumer still has to handle
+        public long getBacklog() {
+            return nextSequence.get() - sequence;
+        }
+
+        public void close() {
+            running = false;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// a block of SCADA readings kept in parallel arrays, no object per reading. Components are referenced by their index
+// in a dictionary of ids shared by all the batches of a source, so the ingestion resolves an id once and not at every
+// sample. Batches come from a Pool and go back to it with recycle() once the subscriber has applied them: a source
+// cannot run further ahead than the batches of its pool, which is also how it feels a slow consumer.
+public final class TelemetryBatch {
+    private static final TelemetryQuantity[] QUANTITIES = TelemetryQuantity.values();
+
+    private final String[] dictionary;
+    private final int[] components;
+    private final byte[] quantities;
+    private final long[] timestamps;
+    private final double[] values;
+    private final Pool pool;
+    private int size;
+
+    private TelemetryBatch(String[] dictionary, int capacity, Pool pool) {
+        this.dictionary = dictionary;
+        this.components = new int[capacity];
+        this.quantities = new byte[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.pool = pool;
+    }
+
+    public TelemetryBatch(String[] dictionary, int capacity) {
+        this(dictionary, capacity, null);
+    }
+
+    // returns false when the batch is full
+    public boolean add(int component, TelemetryQuantity quantity, long timestamp, double value) {
+        if (size == components.length) {
+            return false;
+        }
+        if (component < 0 || component >= dictionary.length) {
+            throw new IndexOutOfBoundsException("component " + component + " not in the dictionary");
+        }
+        components[size] = component;
+        quantities[size] = (byte) quantity.ordinal();
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+        return true;
+    }
+
+    public String[] getDictionary() {
+        return dictionary;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return components.length;
+    }
+
+    public boolean isFull() {
+        return size == components.length;
+    }
+
+    public int component(int i) {
+        return components[i];
+    }
+
+    public TelemetryQuantity quantity(int i) {
+        return QUANTITIES[quantities[i]];
+    }
+
+    int quantityOrdinal(int i) {
+        return quantities[i];
+    }
+
+    public long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    public double value(int i) {
+        return values[i];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // back to the pool it came from (nothing for a batch created on its own), to be called once it has been applied
+    public void recycle() {
+        size = 0;
+        if (pool != null) {
+            pool.free.offer(this);
+        }
+    }
+
+    // fixed set of batches of a source, all created up front
+    public static final class Pool {
+        private final BlockingQueue<TelemetryBatch> free;
+
+        public Pool(String[] dictionary, int batchCapacity, int batches) {
+            free = new ArrayBlockingQueue<>(batches);
+            for (int i = 0; i < batches; i++) {
+                free.add(new TelemetryBatch(dictionary, batchCapacity, this));
+            }
+        }
+
+        // waits for a batch to be recycled
+        public TelemetryBatch acquire() throws InterruptedException {
+            return free.take();
+        }
+
+        public TelemetryBatch acquire(long timeout, TimeUnit unit) throws InterruptedException {
+            return free.poll(timeout, unit);
+        }
+
+        public int available() {
+            return free.size();
+        }
+    }
+}
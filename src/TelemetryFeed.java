@@ -0,0 +1,75 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+// live source of SCADA telemetry: the front end polling the RTUs calls record() for every reading, readings are packed
+// in pooled batches and handed to the subscriber through a SubmissionPublisher. When the ingestion falls behind, the
+// publisher buffer and then the pool run out and record() blocks the poller: the backpressure reaches the field side
+// instead of growing a queue without bound. A batch is handed over when full or at flush().
+//
+// batches are recycled by their subscriber, so the feed accepts one subscriber (a TelemetryIngestor)
+public class TelemetryFeed implements Flow.Publisher<TelemetryBatch>, AutoCloseable {
+    private final SubmissionPublisher<TelemetryBatch> publisher;
+    private final TelemetryBatch.Pool pool;
+    private TelemetryBatch current;
+
+    public TelemetryFeed(String[] dictionary, int batchSize, int maxBufferedBatches, Executor executor) {
+        publisher = new SubmissionPublisher<>(executor, maxBufferedBatches);
+        // SubmissionPublisher rounds its buffer up to a power of two, the subscriber holds one more and one is filling
+        int buffered = Integer.highestOneBit(Math.max(1, maxBufferedBatches) * 2 - 1);
+        pool = new TelemetryBatch.Pool(dictionary, batchSize, buffered + 2);
+    }
+
+    @Override
+    public synchronized void subscribe(Flow.Subscriber<? super TelemetryBatch> subscriber) {
+        if (publisher.getNumberOfSubscribers() > 0) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("a telemetry feed has only one subscriber"));
+            return;
+        }
+        publisher.subscribe(subscriber);
+    }
+
+    public synchronized void record(int component, TelemetryQuantity quantity, long timestamp, double value)
+            throws InterruptedException {
+        if (current == null) {
+            current = pool.acquire();
+        }
+        current.add(component, quantity, timestamp, value);
+        if (current.isFull()) {
+            flush();
+        }
+    }
+
+    // hands over the readings recorded so far
+    public synchronized void flush() {
+        TelemetryBatch batch = current;
+        if (batch == null || batch.size() == 0) {
+            return;
+        }
+        current = null;
+        if (publisher.getNumberOfSubscribers() == 0) { // nobody listening, the readings are dropped
+            batch.recycle();
+            return;
+        }
+        publisher.submit(batch); // blocks while the subscriber buffer is full
+    }
+
+    public int getBufferedBatches() {
+        return publisher.estimateMaximumLag();
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        publisher.close();
+    }
+}
@@ -0,0 +1,314 @@
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+// streaming ingestion of SCADA telemetry into the components. It subscribes to any Flow.Publisher of batches (file
+// replay, live feed) and keeps at most `window` batches requested: the next one is asked only after a batch has been
+// applied, so a slow grid slows the source down instead of filling a queue.
+//
+// Inside a batch the readings are first folded per component (last and max value of each quantity), then the handler
+// of the component type is called once per component with the folded values, e.g. a transformer reporting its
+// temperature 500 times in a batch runs monitorTemp once with the hottest reading, and a generator re-validates its
+// parameters once. Handlers can be replaced per ComponentType.
+public class TelemetryIngestor implements Flow.Subscriber<TelemetryBatch> {
+    private static final TelemetryQuantity[] QUANTITIES = TelemetryQuantity.values();
+    private static final int Q = QUANTITIES.length;
+
+    public interface Handler {
+        void apply(ElectricalComponent ec, Readings readings);
+    }
+
+    // the folded readings of one component in the current batch; only valid during Handler.apply
+    public static final class Readings {
+        private final TelemetryIngestor owner;
+        private int base;
+
+        private Readings(TelemetryIngestor owner) {
+            this.owner = owner;
+        }
+
+        public boolean has(TelemetryQuantity q) {
+            return owner.counts[base + q.ordinal()] > 0;
+        }
+
+        public int count(TelemetryQuantity q) {
+            return owner.counts[base + q.ordinal()];
+        }
+
+        // NaN when not measured in this batch
+        public double last(TelemetryQuantity q) {
+            return has(q) ? owner.last[base + q.ordinal()] : Double.NaN;
+        }
+
+        public double max(TelemetryQuantity q) {
+            return has(q) ? owner.max[base + q.ordinal()] : Double.NaN;
+        }
+
+        public long lastTimestamp() {
+            return owner.lastTimestamp[base / Q];
+        }
+    }
+
+    private final ComponentRegistry registry;
+    private final int window;
+    private final Handler[] handlerByType = new Handler[ComponentType.values().length];
+    private final Readings readings = new Readings(this);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable failure;
+
+    // per dictionary index, rebuilt when a source with another dictionary shows up
+    private String[] dictionary;
+    private ElectricalComponent[] resolved = new ElectricalComponent[0];
+    private int[] touchedAt = new int[0];
+    private int[] touched = new int[0];
+    private long[] lastTimestamp = new long[0];
+    private int[] counts = new int[0];
+    private double[] last = new double[0];
+    private double[] max = new double[0];
+    private TimeSeriesStore.Series[] history = new TimeSeriesStore.Series[0];
+    private int stamp;
+    private volatile TimeSeriesStore historyStore;
+
+    // only written by the thread delivering onNext (calls are serialized by the Flow contract)
+    private volatile long samples;
+    private volatile long batches;
+    private volatile long componentUpdates;
+    private volatile long unknownSamples;
+    private volatile long handlerErrors;
+
+    public TelemetryIngestor(ComponentRegistry registry, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.registry = registry;
+        this.window = window;
+        setHandler(ComponentType.GENERATOR, TelemetryIngestor::applyGenerator);
+        setHandler(ComponentType.TRANSFORMER, TelemetryIngestor::applyTransformer);
+        setHandler(ComponentType.CIRCUIT_BREAKER, TelemetryIngestor::applyBreaker);
+    }
+
+    // default handlers, what the components understand today
+
+    private static void applyGenerator(ElectricalComponent ec, Readings r) {
+        if (r.has(TelemetryQuantity.VOLTAGE) || r.has(TelemetryQuantity.CURRENT)
+                || r.has(TelemetryQuantity.EXCITATION_FIELD)) {
+            ((PowerGenerator) ec).updateReadings(r.last(TelemetryQuantity.VOLTAGE), r.last(TelemetryQuantity.CURRENT),
+                    r.last(TelemetryQuantity.EXCITATION_FIELD));
+        }
+    }
+
+    private static void applyTransformer(ElectricalComponent ec, Readings r) {
+        Transformer transformer = (Transformer) ec;
+        if (r.has(TelemetryQuantity.TEMPERATURE)) {
+            transformer.monitorTemp(r.max(TelemetryQuantity.TEMPERATURE));
+        }
+        if (r.has(TelemetryQuantity.VOLTAGE) || r.has(TelemetryQuantity.CURRENT)) {
+            transformer.updateReadings(r.last(TelemetryQuantity.VOLTAGE), r.last(TelemetryQuantity.CURRENT));
+        }
+    }
+
+    // the peak of the batch decides, and the trip is scheduled without waiting for the contacts (testTripMech would
+    // block the ingestion for the whole mechanical delay)
+    private static void applyBreaker(ElectricalComponent ec, Readings r) {
+        CircuitBreaker cb = (CircuitBreaker) ec;
+        if (r.has(TelemetryQuantity.CURRENT) && r.max(TelemetryQuantity.CURRENT) >= cb.getBreakingCapacity()
+                && !cb.checkCircuitStatus()) {
+            cb.tripAsync(r.max(TelemetryQuantity.CURRENT));
+        }
+    }
+
+    // to be set before subscribing; null = readings of this type are ignored
+    public void setHandler(ComponentType type, Handler handler) {
+        handlerByType[type.ordinal()] = handler;
+    }
+
+    // every reading (not only the folded values) is also appended to the store, to be set before subscribing
+    public void setHistory(TimeSeriesStore store) {
+        this.historyStore = store;
+    }
+
+    // Flow side
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) { // one source per ingestor
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(window);
+    }
+
+    @Override
+    public void onNext(TelemetryBatch batch) {
+        long start = System.nanoTime();
+        int size = batch.size();
+        try {
+            apply(batch);
+        } finally {
+            batch.recycle();
+        }
+        GridMetrics metrics = GridMetrics.shared();
+        metrics.recordSince(GridMetrics.Timer.TELEMETRY_BATCH, start);
+        metrics.add(GridMetrics.Counter.TELEMETRY_SAMPLES, size);
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        failure = throwable;
+        done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        done.countDown();
+    }
+
+    public void cancel() {
+        Flow.Subscription subscription = this.subscription;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        done.countDown();
+    }
+
+    // true when the source completed (or failed, see getFailure) within the timeout
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    // the batch is folded per component, then every component touched gets one handler call
+
+    void apply(TelemetryBatch batch) {
+        int size = batch.size();
+        if (batch.getDictionary() != dictionary) {
+            useDictionary(batch.getDictionary());
+        }
+        if (++stamp == 0) { // wrapped, the marks of the previous batches could look current
+            Arrays.fill(touchedAt, 0);
+            stamp = 1;
+        }
+        int touchedCount = 0;
+        for (int i = 0; i < size; i++) {
+            int c = batch.component(i);
+            int base = c * Q;
+            if (touchedAt[c] != stamp) {
+                touchedAt[c] = stamp;
+                touched[touchedCount++] = c;
+                for (int q = 0; q < Q; q++) {
+                    counts[base + q] = 0;
+                }
+            }
+            int slot = base + batch.quantityOrdinal(i);
+            double value = batch.value(i);
+            if (counts[slot]++ == 0 || value > max[slot]) {
+                max[slot] = value;
+            }
+            last[slot] = value;
+            lastTimestamp[c] = batch.timestamp(i);
+        }
+        TimeSeriesStore store = historyStore;
+        if (store != null) {
+            record(batch, store);
+        }
+
+        long updates = 0;
+        long unknown = 0;
+        long errors = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int c = touched[t];
+            ElectricalComponent ec = resolve(c);
+            int base = c * Q;
+            if (ec == null) {
+                for (int q = 0; q < Q; q++) {
+                    unknown += counts[base + q];
+                }
+                continue;
+            }
+            Handler handler = handlerByType[ec.componentType.ordinal()];
+            if (handler == null) {
+                continue;
+            }
+            readings.base = base;
+            try {
+                handler.apply(ec, readings);
+                updates++;
+            } catch (RuntimeException e) { // one bad component must not stop the stream
+                errors++;
+            }
+        }
+        samples += size;
+        batches++;
+        componentUpdates += updates;
+        unknownSamples += unknown;
+        handlerErrors += errors;
+    }
+
+    private void record(TelemetryBatch batch, TimeSeriesStore store) {
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            int slot = batch.component(i) * Q + batch.quantityOrdinal(i);
+            TimeSeriesStore.Series series = history[slot];
+            if (series == null) {
+                series = store.series(dictionary[batch.component(i)], batch.quantity(i));
+                history[slot] = series;
+            }
+            series.append(batch.timestamp(i), batch.value(i));
+        }
+    }
+
+    private void useDictionary(String[] dictionary) {
+        int n = dictionary.length;
+        this.dictionary = dictionary;
+        resolved = new ElectricalComponent[n];
+        touchedAt = new int[n];
+        touched = new int[n];
+        lastTimestamp = new long[n];
+        counts = new int[n * Q];
+        last = new double[n * Q];
+        max = new double[n * Q];
+        history = new TimeSeriesStore.Series[n * Q];
+        stamp = 0;
+    }
+
+    // looked up again when unknown so far or removed from the registry since
+    private ElectricalComponent resolve(int c) {
+        ElectricalComponent ec = resolved[c];
+        if (ec == null || ec.registrySequence < 0) {
+            ec = registry.get(dictionary[c]);
+            resolved[c] = ec;
+        }
+        return ec;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getComponentUpdates() {
+        return componentUpdates;
+    }
+
+    // readings of ids that are not registered
+    public long getUnknownSamples() {
+        return unknownSamples;
+    }
+
+    public long getHandlerErrors() {
+        return handlerErrors;
+    }
+}
@@ -0,0 +1,9 @@
+// what a SCADA reading measures, in the units of the components: volt, ampere, celsius, tesla, power factor (0-1).
+// The ordinal is written in recordings, new quantities go at the end
+public enum TelemetryQuantity {
+    VOLTAGE,
+    CURRENT,
+    TEMPERATURE,
+    EXCITATION_FIELD,
+    POWER_FACTOR;
+}
@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// file replay source of SCADA telemetry: streams a recording (written by Recorder) to a Flow.Subscriber, as fast as
+// the subscriber asks for it or paced on the recorded timestamps. The file is memory mapped in windows and decoded
+// straight into pooled batches, so replaying millions of samples per second allocates nothing per sample; each
+// subscriber gets its own reading thread and its own pool, and the thread only reads ahead as far as the demand and
+// the free batches allow.
+//
+// layout: header | records
+//   header  MAGIC, VERSION, dictionary size, ids (int length + UTF-8 bytes)
+//   record  component index (int), quantity (byte), timestamp in ms (long), value (double)
+public class TelemetryReplay implements Flow.Publisher<TelemetryBatch> {
+    private static final int MAGIC = 0x53434441; // "SCDA"
+    private static final int VERSION = 1;
+    static final int RECORD_BYTES = 4 + 1 + 8 + 8;
+    private static final long MAP_WINDOW = RECORD_BYTES * (1L << 22); // ~84 MB mapped at a time
+    private static final int POOL_BATCHES = 4;
+    private static final TelemetryQuantity[] QUANTITIES = TelemetryQuantity.values();
+
+    private final Path file;
+    private final int batchSize;
+    private volatile double speed; // 0 = as fast as possible, 1 = real time, 10 = ten times faster
+
+    public TelemetryReplay(Path file, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be positive");
+        }
+        this.file = file;
+        this.batchSize = batchSize;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super TelemetryBatch> subscriber) {
+        Replay replay = new Replay(subscriber);
+        Thread thread = new Thread(replay, "telemetry-replay");
+        thread.setDaemon(true);
+        replay.thread = thread;
+        subscriber.onSubscribe(replay);
+        thread.start();
+    }
+
+    public static String[] readDictionary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readHeader(in);
+        }
+    }
+
+    private static String[] readHeader(ByteBuffer in) throws IOException {
+        if (in.remaining() < 12 || in.getInt() != MAGIC) {
+            throw new IOException("not a telemetry recording");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported telemetry recording version " + version);
+        }
+        String[] dictionary = new String[in.getInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return dictionary;
+    }
+
+    private final class Replay implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super TelemetryBatch> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile Thread thread;
+
+        Replay(Flow.Subscriber<? super TelemetryBatch> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("non positive request " + n)); // rule 3.9
+                return;
+            }
+            demand.accumulateAndGet(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long fileSize = channel.size();
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, MAP_WINDOW));
+                String[] dictionary = readHeader(in);
+                long position = in.position();
+                TelemetryBatch.Pool pool = new TelemetryBatch.Pool(dictionary, batchSize, POOL_BATCHES);
+                long firstTimestamp = Long.MIN_VALUE;
+                long startNanos = 0;
+                while (!cancelled) {
+                    if (in.remaining() < RECORD_BYTES) {
+                        if (fileSize - position < RECORD_BYTES) {
+                            break;
+                        }
+                        in = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(fileSize - position, MAP_WINDOW));
+                    }
+                    if (!awaitDemand()) {
+                        break;
+                    }
+                    TelemetryBatch batch = acquire(pool);
+                    if (batch == null) {
+                        break;
+                    }
+                    int records = Math.min(batchSize, in.remaining() / RECORD_BYTES);
+                    for (int i = 0; i < records; i++) {
+                        int component = in.getInt();
+                        TelemetryQuantity quantity = QUANTITIES[in.get()];
+                        long timestamp = in.getLong();
+                        batch.add(component, quantity, timestamp, in.getDouble());
+                    }
+                    position += (long) records * RECORD_BYTES;
+                    double speed = TelemetryReplay.this.speed;
+                    if (speed > 0) {
+                        if (firstTimestamp == Long.MIN_VALUE) {
+                            firstTimestamp = batch.timestamp(0);
+                            startNanos = System.nanoTime();
+                        }
+                        pace(startNanos + (long) ((batch.timestamp(0) - firstTimestamp) * 1e6 / speed));
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(batch);
+                }
+                if (!cancelled) {
+                    subscriber.onComplete();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!cancelled) {
+                    subscriber.onError(e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean awaitDemand() {
+            while (demand.get() == 0 && !cancelled) {
+                LockSupport.park(this);
+            }
+            return !cancelled;
+        }
+
+        // the subscriber may still hold the batches it was given
+        private TelemetryBatch acquire(TelemetryBatch.Pool pool) throws InterruptedException {
+            while (!cancelled) {
+                TelemetryBatch batch = pool.acquire(10, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    return batch;
+                }
+            }
+            return null;
+        }
+
+        private void pace(long deadline) {
+            long wait;
+            while (!cancelled && (wait = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+
+    // writes a recording, e.g. from a historian export or from a live feed
+    public static final class Recorder implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private final int dictionarySize;
+
+        public Recorder(Path file, String[] dictionary) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            dictionarySize = dictionary.length;
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dictionary.length).flip();
+            write(header);
+            for (String id : dictionary) {
+                byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length);
+                entry.putInt(bytes.length).put(bytes).flip();
+                write(entry);
+            }
+        }
+
+        public void record(int component, TelemetryQuantity quantity, long timestamp, double value) throws IOException {
+            if (component < 0 || component >= dictionarySize) {
+                throw new IndexOutOfBoundsException("component " + component + " not in the dictionary");
+            }
+            if (buffer.remaining() < RECORD_BYTES) {
+                flush();
+            }
+            buffer.putInt(component).put((byte) quantity.ordinal()).putLong(timestamp).putDouble(value);
+        }
+
+        public void record(TelemetryBatch batch) throws IOException {
+            for (int i = 0; i < batch.size(); i++) {
+                record(batch.component(i), batch.quantity(i), batch.timestamp(i), batch.value(i));
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        private void write(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
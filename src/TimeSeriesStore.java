@@ -0,0 +1,575 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// embedded history of the component telemetry, one series per (component id, quantity), compressed the way Gorilla
+// does it:
+//   timestamps  first one raw, then the delta of the deltas: '0' when the period did not change (1 bit per point for
+//               regular per-second data), '10'+7 bits, '110'+9 bits, '1110'+12 bits, else '1111'+64 bits
+//   values      first one raw, then the XOR with the previous value: '0' when equal, '10'+meaningful bits when they
+//               fit the previous leading/trailing zero window, else '11'+5 bits leading zeros+6 bits length+bits
+// The bit streams live off-heap, in 4 KB chunks carved out of 32 MB direct buffers, so months of data do not weigh on
+// the GC: the heap only keeps, per series, the index of its chunks (block, first and last timestamp, count) used to
+// skip whole chunks in range queries. A series accepts points in time order only.
+//
+// Retention drops whole chunks older than the retention period, each time a series starts a new chunk and on
+// applyRetention(now), which also empties the series that stopped receiving data (their open chunk included).
+// The direct memory limit has to allow the data kept (-XX:MaxDirectMemorySize).
+public class TimeSeriesStore {
+    public static final int BLOCK_BYTES = 4096;
+    private static final int BLOCK_BITS = BLOCK_BYTES * 8;
+    private static final int BLOCKS_PER_SLAB = 8192; // 32 MB
+    private static final int MAX_POINT_BITS = 4 + 64 + 2 + 5 + 6 + 64;
+    private static final TelemetryQuantity[] QUANTITIES = TelemetryQuantity.values();
+
+    public interface PointConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    // min/max/avg per window; windows without points are left out
+    public static final class Downsample {
+        private long[] starts = new long[16];
+        private double[] mins = new double[16];
+        private double[] maxs = new double[16];
+        private double[] sums = new double[16];
+        private int[] counts = new int[16];
+        private int size;
+
+        private void add(long start, double min, double max, double sum, int count) {
+            if (size == starts.length) {
+                int length = size * 2;
+                starts = Arrays.copyOf(starts, length);
+                mins = Arrays.copyOf(mins, length);
+                maxs = Arrays.copyOf(maxs, length);
+                sums = Arrays.copyOf(sums, length);
+                counts = Arrays.copyOf(counts, length);
+            }
+            starts[size] = start;
+            mins[size] = min;
+            maxs[size] = max;
+            sums[size] = sum;
+            counts[size] = count;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long windowStart(int i) {
+            return starts[i];
+        }
+
+        public double min(int i) {
+            return mins[i];
+        }
+
+        public double max(int i) {
+            return maxs[i];
+        }
+
+        public double avg(int i) {
+            return sums[i] / counts[i];
+        }
+
+        public int count(int i) {
+            return counts[i];
+        }
+    }
+
+    private final Map<String, Series[]> series = new ConcurrentHashMap<>();
+    private volatile long retentionMillis; // 0 = keep everything
+
+    // block allocator, guarded by the store lock
+    private ByteBuffer[] slabs = new ByteBuffer[0];
+    private int[] freeBlocks = new int[64];
+    private int freeCount;
+    private int blocksCreated;
+    private int blocksInUse;
+
+    // how long the points are kept, 0 keeps everything (the default of a bare store, the controller sets
+    // PowerGridController.DEFAULT_TELEMETRY_RETENTION_MILLIS). Applied when a series starts a new chunk and by
+    // applyRetention
+    public void setRetention(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    public long getRetention() {
+        return retentionMillis;
+    }
+
+    public Series series(String componentId, TelemetryQuantity quantity) {
+        Series[] ofComponent = series.computeIfAbsent(componentId, id -> new Series[QUANTITIES.length]);
+        int q = quantity.ordinal();
+        synchronized (ofComponent) {
+            if (ofComponent[q] == null) {
+                ofComponent[q] = new Series(componentId, quantity);
+            }
+            return ofComponent[q];
+        }
+    }
+
+    // null when nothing was ever recorded for it
+    public Series find(String componentId, TelemetryQuantity quantity) {
+        Series[] ofComponent = series.get(componentId);
+        if (ofComponent == null) {
+            return null;
+        }
+        synchronized (ofComponent) {
+            return ofComponent[quantity.ordinal()];
+        }
+    }
+
+    public boolean append(String componentId, TelemetryQuantity quantity, long timestamp, double value) {
+        return series(componentId, quantity).append(timestamp, value);
+    }
+
+    // points with from <= timestamp < to, in time order; returns how many
+    public int query(String componentId, TelemetryQuantity quantity, long from, long to, PointConsumer consumer) {
+        Series s = find(componentId, quantity);
+        return s == null ? 0 : s.query(from, to, consumer);
+    }
+
+    public Downsample downsample(String componentId, TelemetryQuantity quantity, long from, long to, long window) {
+        Series s = find(componentId, quantity);
+        return s == null ? new Downsample() : s.downsample(from, to, window);
+    }
+
+    // drops the chunks entirely older than now - retention in every series, returns the blocks freed
+    public int applyRetention(long now) {
+        long retention = retentionMillis;
+        if (retention <= 0) {
+            return 0;
+        }
+        int freed = 0;
+        for (Series[] ofComponent : series.values()) {
+            for (int q = 0; q < ofComponent.length; q++) {
+                Series s;
+                synchronized (ofComponent) {
+                    s = ofComponent[q];
+                }
+                if (s != null) {
+                    freed += s.expire(now - retention);
+                }
+            }
+        }
+        return freed;
+    }
+
+    public int getSeriesCount() {
+        int count = 0;
+        for (Series[] ofComponent : series.values()) {
+            synchronized (ofComponent) {
+                for (Series s : ofComponent) {
+                    count += s == null ? 0 : 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    public long getPoints() {
+        long points = 0;
+        for (Series[] ofComponent : series.values()) {
+            for (int q = 0; q < ofComponent.length; q++) {
+                Series s;
+                synchronized (ofComponent) {
+                    s = ofComponent[q];
+                }
+                if (s != null) {
+                    points += s.getPoints();
+                }
+            }
+        }
+        return points;
+    }
+
+    public synchronized int getBlocksInUse() {
+        return blocksInUse;
+    }
+
+    // direct memory held, free blocks included
+    public synchronized long getOffHeapBytes() {
+        return (long) slabs.length * BLOCKS_PER_SLAB * BLOCK_BYTES;
+    }
+
+    private synchronized int allocateBlock() {
+        int block;
+        if (freeCount > 0) {
+            block = freeBlocks[--freeCount];
+            ByteBuffer slab = slabs[block / BLOCKS_PER_SLAB];
+            int base = (block % BLOCKS_PER_SLAB) * BLOCK_BYTES;
+            for (int i = 0; i < BLOCK_BYTES; i += 8) { // the bit writer ORs into the block
+                slab.putLong(base + i, 0);
+            }
+        } else {
+            if (blocksCreated == slabs.length * BLOCKS_PER_SLAB) {
+                slabs = Arrays.copyOf(slabs, slabs.length + 1);
+                slabs[slabs.length - 1] = ByteBuffer.allocateDirect(BLOCKS_PER_SLAB * BLOCK_BYTES);
+            }
+            block = blocksCreated++;
+        }
+        blocksInUse++;
+        return block;
+    }
+
+    private synchronized void freeBlock(int block) {
+        if (freeCount == freeBlocks.length) {
+            freeBlocks = Arrays.copyOf(freeBlocks, freeCount * 2);
+        }
+        freeBlocks[freeCount++] = block;
+        blocksInUse--;
+    }
+
+    private synchronized ByteBuffer slabOf(int block) {
+        return slabs[block / BLOCKS_PER_SLAB];
+    }
+
+    private static int baseOf(int block) {
+        return (block % BLOCKS_PER_SLAB) * BLOCK_BYTES;
+    }
+
+    // one compressed series; appends and queries lock the series, not the store
+    public final class Series {
+        private final String componentId;
+        private final TelemetryQuantity quantity;
+
+        // chunk index, oldest first; the last chunk is the one being written
+        private int[] blocks = new int[4];
+        private long[] firstTimestamps = new long[4];
+        private long[] lastTimestamps = new long[4];
+        private int[] counts = new int[4];
+        private int chunks;
+        private long points;
+
+        // encoder state of the open chunk
+        private ByteBuffer slab;
+        private int base;
+        private int bitPosition = BLOCK_BITS; // no open chunk yet
+        private long previousTimestamp;
+        private long previousDelta;
+        private long previousBits;
+        private int previousLeading = -1;
+        private int previousTrailing;
+
+        private Series(String componentId, TelemetryQuantity quantity) {
+            this.componentId = componentId;
+            this.quantity = quantity;
+        }
+
+        public String getComponentId() {
+            return componentId;
+        }
+
+        public TelemetryQuantity getQuantity() {
+            return quantity;
+        }
+
+        // false if older than the last point (out of order points are not stored)
+        public synchronized boolean append(long timestamp, double value) {
+            if (chunks > 0 && timestamp < lastTimestamps[chunks - 1]) {
+                return false;
+            }
+            long bits = Double.doubleToRawLongBits(value);
+            if (bitPosition + MAX_POINT_BITS > BLOCK_BITS) {
+                openChunk(timestamp);
+                write(timestamp, 64);
+                write(bits, 64);
+                previousDelta = 0;
+                previousLeading = -1;
+            } else {
+                long delta = timestamp - previousTimestamp;
+                writeDeltaOfDelta(delta - previousDelta);
+                previousDelta = delta;
+                writeXor(bits ^ previousBits);
+            }
+            previousTimestamp = timestamp;
+            previousBits = bits;
+            int c = chunks - 1;
+            lastTimestamps[c] = timestamp;
+            counts[c]++;
+            points++;
+            return true;
+        }
+
+        private void openChunk(long timestamp) {
+            long retention = retentionMillis;
+            if (retention > 0 && chunks > 0) {
+                dropBefore(timestamp - retention);
+            }
+            if (chunks == blocks.length) {
+                int length = chunks * 2;
+                blocks = Arrays.copyOf(blocks, length);
+                firstTimestamps = Arrays.copyOf(firstTimestamps, length);
+                lastTimestamps = Arrays.copyOf(lastTimestamps, length);
+                counts = Arrays.copyOf(counts, length);
+            }
+            int block = allocateBlock();
+            blocks[chunks] = block;
+            firstTimestamps[chunks] = timestamp;
+            lastTimestamps[chunks] = timestamp;
+            counts[chunks] = 0;
+            chunks++;
+            slab = slabOf(block);
+            base = baseOf(block);
+            bitPosition = 0;
+        }
+
+        private void writeDeltaOfDelta(long dod) {
+            if (dod == 0) {
+                write(0, 1);
+            } else if (dod >= -63 && dod <= 64) {
+                write(0b10, 2);
+                write(dod + 63, 7);
+            } else if (dod >= -255 && dod <= 256) {
+                write(0b110, 3);
+                write(dod + 255, 9);
+            } else if (dod >= -2047 && dod <= 2048) {
+                write(0b1110, 4);
+                write(dod + 2047, 12);
+            } else {
+                write(0b1111, 4);
+                write(dod, 64);
+            }
+        }
+
+        private void writeXor(long xor) {
+            if (xor == 0) {
+                write(0, 1);
+                return;
+            }
+            int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                write(0b10, 2);
+                write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                int length = 64 - leading - trailing;
+                write(0b11, 2);
+                write(leading, 5);
+                write(length - 1, 6);
+                write(xor >>> trailing, length);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+
+        // the low `count` bits of value, most significant first, ORed into the zeroed block
+        private void write(long value, int count) {
+            while (count > 0) {
+                int index = base + (bitPosition >>> 3);
+                int free = 8 - (bitPosition & 7);
+                int take = Math.min(free, count);
+                int bits = (int) (value >>> (count - take)) & ((1 << take) - 1);
+                slab.put(index, (byte) (slab.get(index) | (bits << (free - take))));
+                count -= take;
+                bitPosition += take;
+            }
+        }
+
+        public synchronized int query(long from, long to, PointConsumer consumer) {
+            int found = 0;
+            Reader reader = new Reader();
+            for (int c = firstChunk(from); c < chunks && firstTimestamps[c] < to; c++) {
+                reader.open(c);
+                for (int i = 0; i < counts[c]; i++) {
+                    reader.next();
+                    if (reader.timestamp >= to) {
+                        break;
+                    }
+                    if (reader.timestamp >= from) {
+                        consumer.accept(reader.timestamp, reader.value);
+                        found++;
+                    }
+                }
+            }
+            return found;
+        }
+
+        // windows start at from, from + window, ...
+        public synchronized Downsample downsample(long from, long to, long window) {
+            if (window <= 0) {
+                throw new IllegalArgumentException("window must be positive");
+            }
+            Downsample result = new Downsample();
+            Reader reader = new Reader();
+            long windowStart = Long.MIN_VALUE;
+            double min = 0;
+            double max = 0;
+            double sum = 0;
+            int count = 0;
+            for (int c = firstChunk(from); c < chunks && firstTimestamps[c] < to; c++) {
+                reader.open(c);
+                for (int i = 0; i < counts[c]; i++) {
+                    reader.next();
+                    long t = reader.timestamp;
+                    if (t >= to) {
+                        break;
+                    }
+                    if (t < from) {
+                        continue;
+                    }
+                    long start = from + (t - from) / window * window;
+                    double v = reader.value;
+                    if (start != windowStart) {
+                        if (count > 0) {
+                            result.add(windowStart, min, max, sum, count);
+                        }
+                        windowStart = start;
+                        min = v;
+                        max = v;
+                        sum = 0;
+                        count = 0;
+                    }
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                    sum += v;
+                    count++;
+                }
+            }
+            if (count > 0) {
+                result.add(windowStart, min, max, sum, count);
+            }
+            return result;
+        }
+
+        // first chunk that can hold points at or after from
+        private int firstChunk(long from) {
+            int low = 0;
+            int high = chunks - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lastTimestamps[mid] < from) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // chunks whose last point is older than limit, never the open one
+        synchronized int dropBefore(long limit) {
+            int drop = 0;
+            while (drop < chunks - 1 && lastTimestamps[drop] < limit) {
+                freeBlock(blocks[drop]);
+                points -= counts[drop];
+                drop++;
+            }
+            if (drop > 0) {
+                int keep = chunks - drop;
+                System.arraycopy(blocks, drop, blocks, 0, keep);
+                System.arraycopy(firstTimestamps, drop, firstTimestamps, 0, keep);
+                System.arraycopy(lastTimestamps, drop, lastTimestamps, 0, keep);
+                System.arraycopy(counts, drop, counts, 0, keep);
+                chunks = keep;
+            }
+            return drop;
+        }
+
+        // dropBefore, and if even the last point is older than limit the open chunk goes too: a series that stopped
+        // receiving data gives its block back. The series stays usable (the ingestors keep a reference to it), the next
+        // point opens a new chunk
+        synchronized int expire(long limit) {
+            int dropped = dropBefore(limit);
+            if (chunks == 1 && lastTimestamps[0] < limit) {
+                freeBlock(blocks[0]);
+                points -= counts[0];
+                chunks = 0;
+                slab = null;
+                bitPosition = BLOCK_BITS;
+                dropped++;
+            }
+            return dropped;
+        }
+
+        public synchronized long getPoints() {
+            return points;
+        }
+
+        public synchronized int getChunks() {
+            return chunks;
+        }
+
+        public synchronized long getFirstTimestamp() {
+            return chunks == 0 ? Long.MIN_VALUE : firstTimestamps[0];
+        }
+
+        public synchronized long getLastTimestamp() {
+            return chunks == 0 ? Long.MIN_VALUE : lastTimestamps[chunks - 1];
+        }
+
+        // decoder of one chunk, used under the series lock
+        private final class Reader {
+            private ByteBuffer in;
+            private int start;
+            private int position;
+            private boolean first;
+            private long timestamp;
+            private long delta;
+            private long bits;
+            private int leading;
+            private int trailing;
+            double value;
+
+            void open(int chunk) {
+                in = slabOf(blocks[chunk]);
+                start = baseOf(blocks[chunk]);
+                position = 0;
+                first = true;
+            }
+
+            void next() {
+                if (first) {
+                    first = false;
+                    timestamp = read(64);
+                    bits = read(64);
+                    delta = 0;
+                } else {
+                    delta += readDeltaOfDelta();
+                    timestamp += delta;
+                    if (read(1) != 0) {
+                        if (read(1) != 0) {
+                            leading = (int) read(5);
+                            int length = (int) read(6) + 1;
+                            trailing = 64 - leading - length;
+                        }
+                        bits ^= read(64 - leading - trailing) << trailing;
+                    }
+                }
+                value = Double.longBitsToDouble(bits);
+            }
+
+            private long readDeltaOfDelta() {
+                if (read(1) == 0) {
+                    return 0;
+                }
+                if (read(1) == 0) {
+                    return read(7) - 63;
+                }
+                if (read(1) == 0) {
+                    return read(9) - 255;
+                }
+                if (read(1) == 0) {
+                    return read(12) - 2047;
+                }
+                return read(64);
+            }
+
+            private long read(int count) {
+                long result = 0;
+                while (count > 0) {
+                    int b = in.get(start + (position >>> 3)) & 0xFF;
+                    int available = 8 - (position & 7);
+                    int take = Math.min(available, count);
+                    int bits = (b >>> (available - take)) & ((1 << take) - 1);
+                    result = (result << take) | bits;
+                    count -= take;
+                    position += take;
+                }
+                return result;
+            }
+        }
+    }
+}
@@ -1,6 +1,5 @@
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
 
 public class Transformer extends ElectricalComponent {
     private PowerGenerator powerGenerator;
@@ -8,9 +7,11 @@ public class Transformer extends ElectricalComponent {
     private double transformationRatio = 0.01;
     private double secondaryVoltage;
     private String coolingType = "oil";
-    private List<LocalDate> mantainanceHist = new ArrayList<>();
     private double primaryCurrent;
     private PowerGridController controller;
+    // row of the parameters in the controller ParameterStore, written again at every change
+    private volatile ParameterStore store;
+    private int storeRow = -1;
 
 
     public Transformer(PowerGenerator powerGenerator, String componentId, ComponentType componentType,
@@ -42,7 +43,7 @@ public class Transformer extends ElectricalComponent {
 
     public void monitorTemp(double temperature){
         if (temperature > 100){
-            setCoolingSystem();
+            setCoolingSystem(temperature);
         }
     }
 
@@ -60,7 +61,7 @@ public class Transformer extends ElectricalComponent {
     @Override
     public void performMantainance(TaskType taskType) {
         TaskStatus taskStatus = TaskStatus.IN_PROGRESS;
-        this.status = PowerComponentStatus.OFFLINE;
+        setStatus(PowerComponentStatus.OFFLINE);
     }
 
 
@@ -70,18 +71,17 @@ public class Transformer extends ElectricalComponent {
         return Pout()/Pin();
     }
 
-    @Override
-    public void addDateToMantainanceHist(LocalDate lastMaintenanceDate) {
-        mantainanceHist.add(lastMaintenanceDate);
-    }
-
     public void setCoolingSystem(){
-        System.out.println("cooling system engaged");
+        setCoolingSystem(Double.NaN);
     }
 
-    public double Pin(){  // same as generator
-        return powerGenerator.calculateGeneratedElectricPower(powerGenerator.activePower, powerGenerator.reactivePower, powerGenerator.powerFactor);
+    // the temperature that made it engage goes to the event log, NaN when engaged by hand
+    public void setCoolingSystem(double temperature){
+        GridEventLog.shared().coolingEngaged(this, temperature);
+    }
 
+    public double Pin(){  // same as generator, cached there until its state changes
+        return powerGenerator.getApparentPower();
     }
 
     public double Pout(){
@@ -91,8 +91,82 @@ public class Transformer extends ElectricalComponent {
 
 
 
+    static final int SNAPSHOT_BYTES = 8 * 4;
+
+    @Override
+    void writeParameters(ByteBuffer out) {
+        out.putDouble(primaryVoltage).putDouble(transformationRatio).putDouble(secondaryVoltage).putDouble(primaryCurrent);
+    }
+
+    @Override
+    void readParameters(ByteBuffer in) {
+        primaryVoltage = in.getDouble();
+        transformationRatio = in.getDouble();
+        secondaryVoltage = in.getDouble();
+        primaryCurrent = in.getDouble();
+        writeStore();
+    }
+
+    @Override
+    protected void parametersChanged() {
+        writeStore();
+        super.parametersChanged();
+    }
+
+    // without a store only the volatile read; with one, the fields are copied under the transformer lock (a change
+    // racing with enableParameterStore itself may reach the row only with the next change)
+    private void writeStore() {
+        if (store == null) {
+            return;
+        }
+        synchronized (this) {
+            ParameterStore store = this.store;
+            if (store != null) {
+                store.writeTransformer(storeRow, primaryVoltage, secondaryVoltage, primaryCurrent,
+                        transformationRatio);
+            }
+        }
+    }
+
+    // called by the store under the transformer lock
+    void attachStore(ParameterStore store, int row) {
+        this.storeRow = row;
+        this.store = store;
+        writeStore();
+    }
+
+    void detachStore() {
+        this.store = null;
+        this.storeRow = -1;
+    }
+
+    ParameterStore store() {
+        return store;
+    }
+
+    int storeRow() {
+        return storeRow;
+    }
+
+    // measured values on the primary side (SCADA telemetry), NaN = not measured this time
+    public void updateReadings(double primaryVoltage, double primaryCurrent){
+        if (!Double.isNaN(primaryVoltage)){
+            this.primaryVoltage = primaryVoltage;
+            this.secondaryVoltage = primaryVoltage / transformationRatio;
+        }
+        if (!Double.isNaN(primaryCurrent)){
+            this.primaryCurrent = primaryCurrent;
+        }
+        parametersChanged();
+    }
+
+    public PowerGenerator getPowerGenerator() {
+        return powerGenerator;
+    }
+
     public void setPowerGenerator(PowerGenerator powerGenerator) {
         this.powerGenerator = powerGenerator;
+        wiringChanged();
     }
 
     public void setController(PowerGridController controller) {
@@ -0,0 +1,102 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// shared timer for the delayed breaker trips. Before, every trip started its own thread that slept 6 seconds, so a
+// fault storm meant thousands of sleeping threads; here a pending trip is only an entry in the queue of the grid
+// clock (a scheduled executor on the wall clock, an event in a simulation), and a couple of threads are enough for
+// tens of thousands of them.
+public class TripScheduler {
+    public static final long TRIP_DELAY_MS = 6000; // time a 1 tonn breaker needs to move its contacts
+
+    private static final TripScheduler SHARED = new TripScheduler(null);
+
+    private final GridClock clock; // null: whatever clock is installed when the trip is scheduled
+    private final Map<CircuitBreaker, CompletableFuture<CircuitBreaker>> pendingTrips = new ConcurrentHashMap<>();
+
+    public TripScheduler(GridClock clock) {
+        this.clock = clock;
+    }
+
+    private GridClock clock() {
+        return clock != null ? clock : GridClock.current();
+    }
+
+    public static TripScheduler shared() {
+        return SHARED;
+    }
+
+    // the returned future completes when the breaker is open; cancelling it cancels the trip. A breaker can have
+    // only one pending trip, asking again returns the trip already scheduled
+    public CompletableFuture<CircuitBreaker> scheduleTrip(CircuitBreaker cb, double current, long delay, TimeUnit unit) {
+        PendingTrip trip = new PendingTrip();
+        CompletableFuture<CircuitBreaker> existing = pendingTrips.putIfAbsent(cb, trip);
+        if (existing != null) {
+            return existing;
+        }
+        GridMetrics metrics = GridMetrics.shared();
+        metrics.increment(GridMetrics.Counter.TRIPS_SCHEDULED);
+        // timed on the clock running the delay: under a SimulationEngine the histogram gets the virtual trip time
+        GridClock clock = clock();
+        long requestedAt = clock.currentTimeMillis();
+        GridEvents.BreakerTrip event = new GridEvents.BreakerTrip();
+        event.begin();
+        GridClock.Timer timer = clock.schedule(new delayedOpContaineer(current, cb, trip), delay, unit);
+        trip.whenComplete((breaker, failure) -> {
+            pendingTrips.remove(cb, trip);
+            if (trip.isCancelled()) {
+                timer.cancel();
+                metrics.increment(GridMetrics.Counter.TRIPS_CANCELLED);
+            } else {
+                metrics.record(GridMetrics.Timer.BREAKER_TRIP,
+                        TimeUnit.MILLISECONDS.toNanos(clock.currentTimeMillis() - requestedAt));
+                metrics.increment(GridMetrics.Counter.TRIPS_COMPLETED);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.breakerId = cb.componentId;
+                event.current = current;
+                event.cancelled = trip.isCancelled();
+                event.commit();
+            }
+        });
+        return trip;
+    }
+
+    public boolean cancelTrip(CircuitBreaker cb) {
+        CompletableFuture<CircuitBreaker> trip = pendingTrips.get(cb);
+        return trip != null && trip.cancel(false);
+    }
+
+    public boolean isTripPending(CircuitBreaker cb) {
+        return pendingTrips.containsKey(cb);
+    }
+
+    public int getPendingTrips() {
+        return pendingTrips.size();
+    }
+
+    // future of a scheduled trip. The timer claims it before moving the contacts and a cancel claims it before
+    // cancelling: only one of the two wins, so a cancel landing while the trip fires returns false instead of being
+    // reported as done while the breaker opens anyway
+    static final class PendingTrip extends CompletableFuture<CircuitBreaker> {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return claim() && super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    public void shutdown() {
+        for (CompletableFuture<CircuitBreaker> trip : pendingTrips.values()) {
+            trip.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// real time: System.currentTimeMillis and a scheduled executor with a few daemon threads for the delayed actions
+public class WallClock extends GridClock {
+    private final ScheduledThreadPoolExecutor executor;
+
+    public WallClock(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, "grid-clock-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true); // cancelled actions must not stay in the queue until their deadline
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public Timer schedule(Runnable action, long delay, TimeUnit unit) {
+        ScheduledFuture<?> future = executor.schedule(action, delay, unit);
+        return () -> future.cancel(false);
+    }
+
+    @Override
+    public <T> T await(CompletableFuture<T> future) throws InterruptedException, ExecutionException {
+        return future.get();
+    }
+
+    @Override
+    public double nextRandom() {
+        return Math.random();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
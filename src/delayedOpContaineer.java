@@ -1,30 +1,31 @@
 
-import java.util.concurrent.CountDownLatch;
-
 public class delayedOpContaineer implements Runnable  {
     private double current;
     CircuitBreaker cirB; // had here problem, passing reference ???   field needed to access the openCircuitMethod
     // got stuck here, so how ?? through constructor I passed a reference (dependency), so that I can access CircuitBreaker
     // class.
-    private CountDownLatch latch;
+    private TripScheduler.PendingTrip done;
 
 
-    public delayedOpContaineer(double current, CircuitBreaker cirB, CountDownLatch latch) {
+    public delayedOpContaineer(double current, CircuitBreaker cirB, TripScheduler.PendingTrip done) {
         this.current = current;
         this.cirB = cirB;
-        this.latch = latch;
+        this.done = done;
     }
 
 
     @Override
     public void run() {
-        // this delay simulates a 1 tonn circuit breaker that needs some time when moving when isolates components
+        // the delay that simulates a 1 tonn circuit breaker moving its contacts is now given by the TripScheduler,
+        // which runs this operation when the time is over instead of keeping a sleeping thread
+        if (!done.claim()){ // trip cancelled in the meantime, the cancel won
+            return;
+        }
         try {
-            Thread.sleep(6000);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            cirB.openCircuit();
+            done.complete(cirB);
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
         }
-        cirB.openCircuit();
-        latch.countDown();
     }
 }